@@ -1,10 +1,14 @@
 package com.github.ug_dbg;
 
 import org.apache.commons.exec.CommandLine;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
@@ -15,11 +19,25 @@ import java.util.regex.Pattern;
  */
 abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo {
 
+	/** A command line executor. */
+	interface Executable {
+		void execute(CommandLine cmdLine) throws MojoExecutionException, MojoFailureException;
+	}
+
+	private static final long MEGABYTE = 1024 * 1024;
+
 	/**
 	 * If true, try to redirect the NPM output to a log handler so it integrates nicely into maven output.
 	 */
 	@Parameter(property = "log.handler", defaultValue = "true")
 	private boolean useLogHandler;
+
+	/**
+	 * If true and the {@link #useLogHandler log handler} is not used, the process inherits the maven standard streams :
+	 * its output goes straight to the terminal, without being copied by any maven thread. Default is 'true'.
+	 */
+	@Parameter(property = "log.inheritIO", defaultValue = "true")
+	private boolean inheritIO;
 	
 	/** 
 	 * Log level of the Mojo logger. 
@@ -28,6 +46,179 @@ abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo {
 	 */
 	@Parameter(property = "log.level", defaultValue = "INFO")
 	private String logLevel;
+
+	/**
+	 * If true, the process output is written to the maven log by a dedicated thread, through a bounded buffer. 
+	 * A slow maven console then does not stall the process. Default is 'false'.
+	 */
+	@Parameter(property = "log.async", defaultValue = "false")
+	private boolean logAsync;
+
+	/** The {@link #logAsync} buffer capacity, in lines. Default is 8192. */
+	@Parameter(property = "log.asyncCapacity", defaultValue = "8192")
+	private int logAsyncCapacity;
+
+	/** What to do when the {@link #logAsync} buffer is full : BLOCK, DROP_OLDEST or SUMMARIZE. Default is 'BLOCK'. */
+	@Parameter(property = "log.asyncOverflow", defaultValue = "BLOCK")
+	private AsyncLog.Overflow logAsyncOverflow;
+
+	/**
+	 * The prefixes of the output lines to log as errors (case insensitive, leading whitespaces ignored). 
+	 * Optional. If not specified, the goal default is used (e.g. 'npm ERR' for npm, 'ERROR' for ng).
+	 */
+	@Parameter(property = "log.errorPrefixes")
+	private String[] errorPrefixes;
+
+	/** The prefixes of the output lines to log as warnings. Optional. If not specified, the goal default is used. */
+	@Parameter(property = "log.warnPrefixes")
+	private String[] warnPrefixes;
+
+	/** The prefixes of the output lines to log as info, even from std.err. Optional. */
+	@Parameter(property = "log.infoPrefixes")
+	private String[] infoPrefixes;
+
+	/** The prefixes of the output lines to log as debug. Optional. If not specified, the goal default is used. */
+	@Parameter(property = "log.debugPrefixes")
+	private String[] debugPrefixes;
+
+	/**
+	 * The input files of the command(s), as glob patterns relative to the working directory (e.g. 'src/**').
+	 * Optional. If set, a command is skipped when its inputs and {@link #outputs} did not change 
+	 * since its last successful execution.
+	 */
+	@Parameter
+	private String[] inputs;
+
+	/** The glob patterns to exclude from the {@link #inputs}. Optional. */
+	@Parameter
+	private String[] inputExcludes;
+
+	/** The output files or directories of the command(s), relative to the working directory (e.g. 'dist'). Optional. */
+	@Parameter
+	private String[] outputs;
+
+	/** 
+	 * If 'false', always execute the command(s), even if the {@link #inputs} are declared. Default is 'true'. 
+	 * The {@link #buildCache} still applies : its key only depends on the {@link #inputs}.
+	 */
+	@Parameter(property = "npm.incremental", defaultValue = "true")
+	private boolean incremental;
+
+	/** The file where the inputs/outputs hashes of the successful executions are stored. */
+	@Parameter(property = "npm.incrementalIndex", defaultValue = "${project.build.directory}/npm-incremental.properties")
+	private File incrementalIndex;
+
+	/** If 'true', record the performance metrics of each process execution into the {@link #metricsFile}. Default is 'true'. */
+	@Parameter(property = "npm.metrics", defaultValue = "true")
+	private boolean metrics;
+
+	/** The JSON lines file where the execution metrics are appended : one JSON object per execution. */
+	@Parameter(property = "npm.metricsFile", defaultValue = "${project.build.directory}/npm-metrics.jsonl")
+	private File metricsFile;
+
+	/** The process tree sampling interval (CPU time, RSS) for the {@link #metrics}, in milliseconds. Default is 500. */
+	@Parameter(property = "npm.metricsSampling", defaultValue = "500")
+	private long metricsSampling;
+
+	/**
+	 * The max duration of each npm/ng process, in seconds. The process and its child processes are then terminated. 
+	 * Optional. If not specified (or &lt;= 0), there is no timeout.
+	 */
+	@Parameter(property = "npm.timeout", defaultValue = "0")
+	private long timeout;
+
+	/**
+	 * The max duration without any output of each npm/ng process, in seconds (hang detection). 
+	 * The process and its child processes are then terminated. Requires {@link #useLogHandler}.
+	 * Optional. If not specified (or &lt;= 0), there is no hang detection.
+	 */
+	@Parameter(property = "npm.hangTimeout", defaultValue = "0")
+	private long hangTimeout;
+
+	/**
+	 * The max number of npm/ng processes running at the same time in the build (e.g. with '-T 8'). The other executions wait.
+	 * Optional. If not specified (or &lt;= 0), there is no limit. The first value set in the build is used.
+	 */
+	@Parameter(property = "npm.maxProcesses", defaultValue = "0")
+	private int maxProcesses;
+
+	/**
+	 * If 'true', set the node max old space size of each process (NODE_OPTIONS=--max-old-space-size) to its share of the physical memory :
+	 * 75% of the physical memory divided by {@link #maxProcesses} (or the number of processors).
+	 * An existing max old space size in NODE_OPTIONS is kept. Default is 'false'.
+	 */
+	@Parameter(property = "npm.nodeMemory", defaultValue = "false")
+	private boolean nodeMemory;
+
+	/** The niceness increment of the npm/ng processes ('nice -n'), not on Windows. Optional. Not applied if &lt;= 0. */
+	@Parameter(property = "npm.nice", defaultValue = "0")
+	private int nice;
+
+	/**
+	 * If 'true', start the goal in the background and return immediately : e.g. bind it to an early phase, 
+	 * so the frontend build overlaps the java compilation and tests. Its log is buffered.
+	 * The 'await' goal (e.g. bound to 'prepare-package') waits for it, writes its log and propagates its failure.
+	 * Default is 'false'.
+	 */
+	@Parameter(property = "npm.background", defaultValue = "false")
+	private boolean background;
+
+	/** The current maven project, to match the background executions with the 'await' goal. */
+	@Parameter(defaultValue = "${project.groupId}:${project.artifactId}", readonly = true)
+	private String projectId;
+
+	/** The buffered log, if the goal runs in the {@link #background}. */
+	private Log backgroundLog;
+
+	/** The project build directory, e.g. for the {@link #backgroundLog} spill file. */
+	@Parameter(defaultValue = "${project.build.directory}", readonly = true)
+	private File buildDirectory;
+
+	/**
+	 * If 'true', record the duration of the parallel tasks (exec-all args, exec working directories) in the {@link #historyFile},
+	 * to start the longest expected tasks first and log the expected vs actual critical path. Default is 'true'.
+	 */
+	@Parameter(property = "npm.history", defaultValue = "true")
+	private boolean history;
+
+	/** The duration history file. */
+	@Parameter(property = "npm.historyFile", defaultValue = "${project.build.directory}/.npm-history.json")
+	private File historyFile;
+
+	/** If 'true', append a begin/end event for each process execution to the {@link #traceFile}. Default is 'false'. */
+	@Parameter(property = "npm.trace", defaultValue = "false")
+	private boolean trace;
+
+	/** The Chrome trace event file, shared by the modules of the reactor build. Open it in Perfetto or chrome://tracing. */
+	@Parameter(property = "npm.traceFile", defaultValue = "${session.executionRootDirectory}/target/npm-trace.json")
+	private File traceFile;
+
+	/** The build start time : the {@link #traceFile} is truncated by the first event of a new build. */
+	@Parameter(defaultValue = "${session.request.startTime}", readonly = true)
+	private Date buildStart;
+
+	/** The current maven module. */
+	@Parameter(defaultValue = "${project.artifactId}", readonly = true)
+	private String module;
+
+	/**
+	 * The local build cache directory (e.g. '${user.home}/.m2/npm-cache'). Optional. 
+	 * If set, the {@link #outputs} of a successful command are stored in the cache, keyed by its {@link #inputs}.
+	 * They are then restored instead of executing the command again (e.g. after 'mvn clean').
+	 */
+	@Parameter(property = "npm.buildCache")
+	private File buildCache;
+
+	/** The max size of the {@link #buildCache}, in megabytes. Default is 1024. */
+	@Parameter(property = "npm.buildCacheMaxSize", defaultValue = "1024")
+	private long buildCacheMaxSize;
+
+	/** 
+	 * If 'true', hard link the files from/to the {@link #buildCache} instead of copying them, when possible. 
+	 * The outputs must then never be modified in place. Default is 'false'.
+	 */
+	@Parameter(property = "npm.buildCacheHardLinks", defaultValue = "false")
+	private boolean buildCacheHardLinks;
 	
 	Level logLevel() {
 		try {
@@ -45,6 +236,257 @@ abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo {
 	protected boolean useLogHandler() {
 		return this.useLogHandler;
 	}
+
+	/**
+	 * Should the process inherit the maven standard streams, when the log handler is not used ?
+	 * @return {@link #inheritIO}
+	 */
+	protected boolean inheritIO() {
+		return this.inheritIO;
+	}
+
+	/**
+	 * The max duration of a process, in seconds.
+	 * @return {@link #timeout}, &lt;= 0 for no timeout
+	 */
+	long timeout() {
+		return this.timeout;
+	}
+
+	/**
+	 * The max duration without output of a process, in seconds.
+	 * @return {@link #hangTimeout}, &lt;= 0 for no hang detection
+	 */
+	long hangTimeout() {
+		return this.hangTimeout;
+	}
+
+	/**
+	 * The CPU and memory budget of the processes.
+	 * @return a resource governor, with the build-wide process slots
+	 */
+	ResourceGovernor governor() {
+		return new ResourceGovernor(this.maxProcesses, this.nodeMemory, this.nice, this.getLog());
+	}
+
+	/**
+	 * The prefixes to classify the process output lines : the configured prefixes, or the goal defaults.
+	 * @param errPrefix   the goal default error prefix
+	 * @param warnPrefix  the goal default warning prefix
+	 * @param debugPrefix the goal default debug prefix
+	 * @return the output lines prefixes
+	 */
+	PrefixTrie outputPrefixes(String errPrefix, String warnPrefix, String debugPrefix) {
+		return new PrefixTrie()
+			.add(this.errorPrefixes == null ? new String[] {errPrefix}   : this.errorPrefixes, Level.SEVERE)
+			.add(this.warnPrefixes  == null ? new String[] {warnPrefix}  : this.warnPrefixes,  Level.WARNING)
+			.add(this.infoPrefixes, Level.INFO)
+			.add(this.debugPrefixes == null ? new String[] {debugPrefix} : this.debugPrefixes, Level.FINE);
+	}
+
+	/**
+	 * The mojo log : a buffered log if the goal runs in the {@link #background}.
+	 * @return the mojo log
+	 */
+	@Override
+	public Log getLog() {
+		return this.backgroundLog == null ? super.getLog() : this.backgroundLog;
+	}
+
+	/**
+	 * Run the goal, or start it in a background thread if {@link #background}.
+	 * @param name the goal name, for the logs
+	 * @param goal the goal to run
+	 * @throws MojoExecutionException error executing the goal (not in the background)
+	 * @throws MojoFailureException   the goal failed (not in the background)
+	 */
+	protected void executeOrStart(String name, TaskScheduler.Task goal) throws MojoExecutionException, MojoFailureException {
+		if (! this.background) {
+			goal.run();
+			return;
+		}
+
+		this.getLog().info("Starting [" + name + "] in the background. Use the 'await' goal to wait for it.");
+		this.start(this.projectId, name, goal);
+	}
+
+	/**
+	 * Start the goal in a background thread : its log is buffered until it is awaited.
+	 * @param key  the key to {@link BackgroundExecutions#take(String) take} the execution
+	 * @param name the goal name, for the logs
+	 * @param goal the goal to run
+	 */
+	void start(String key, String name, TaskScheduler.Task goal) {
+		BackgroundExecutions.BufferedLog log = new BackgroundExecutions.BufferedLog(this.getLog(), this.buildDirectory);
+		this.backgroundLog = log;
+		BackgroundExecutions.start(key, name, log, goal);
+	}
+
+	/**
+	 * Does the goal run in the background ?
+	 * @return true if {@link #background}, or if the goal was {@link #start started} in the background
+	 */
+	boolean background() {
+		return this.background || this.backgroundLog != null;
+	}
+
+	/**
+	 * Does the goal declare {@link #inputs}, i.e. are its commands incremental ?
+	 * @return true if there is at least an input pattern
+	 */
+	boolean hasInputs() {
+		return this.inputs != null && this.inputs.length > 0;
+	}
+
+	/**
+	 * The project build directory.
+	 * @return ${project.build.directory}
+	 */
+	File buildDirectory() {
+		return this.buildDirectory;
+	}
+
+	/**
+	 * The current maven project, to match the background executions.
+	 * @return the project groupId:artifactId
+	 */
+	String projectId() {
+		return this.projectId;
+	}
+
+	/**
+	 * Start measuring a process execution.
+	 * @param cmdLine    the command line
+	 * @param workingDir the working directory
+	 * @return the execution metrics, null if {@link #metrics} is disabled
+	 */
+	ExecutionMetrics startMetrics(CommandLine cmdLine, File workingDir) {
+		if (! this.metrics || this.metricsFile == null) {
+			return null;
+		}
+		return new ExecutionMetrics(this.module, cmdLine.toString(), workingDir, this.metricsSampling, this.getLog());
+	}
+
+	/**
+	 * The duration history of the parallel tasks.
+	 * @return the duration history, null if {@link #history} is disabled
+	 */
+	DurationHistory durationHistory() {
+		if (! this.history || this.historyFile == null) {
+			return null;
+		}
+		return new DurationHistory(this.historyFile, this.getLog());
+	}
+
+	/**
+	 * The trace event writer of the build.
+	 * @return the trace events, null if {@link #trace} is disabled
+	 */
+	TraceEvents traceEvents() {
+		if (! this.trace || this.traceFile == null) {
+			return null;
+		}
+		return new TraceEvents(this.traceFile, this.buildStart == null ? 0 : this.buildStart.getTime(), this.getLog());
+	}
+
+	/**
+	 * The current maven module.
+	 * @return the module artifactId
+	 */
+	String module() {
+		return this.module;
+	}
+
+	/**
+	 * Write the metrics of a process execution.
+	 * @param metrics the execution metrics. Can be null.
+	 */
+	void writeMetrics(ExecutionMetrics metrics) {
+		if (metrics != null) {
+			metrics.write(this.metricsFile);
+			this.getLog().debug(
+				"Execution metrics : wall time [" + metrics.wallTimeMillis() + "] ms, "
+				+ "CPU time [" + metrics.cpuTimeMillis() + "] ms "
+				+ "(see [" + this.metricsFile + "])"
+			);
+		}
+	}
+
+	/**
+	 * The log for a process output : an {@link AsyncLog} if {@link #logAsync}, that must be closed.
+	 * @return the mojo log or a new asynchronous log
+	 */
+	Log outputLog() {
+		return this.logAsync ? new AsyncLog(this.getLog(), this.logAsyncCapacity, this.logAsyncOverflow) : this.getLog();
+	}
+	
+	/**
+	 * Execute a command line, unless it is up-to-date or its outputs can be restored from the build cache.
+	 * @param cmdLine    the command line
+	 * @param workingDir the command line working directory
+	 * @param executable the command line executor
+	 * @throws MojoExecutionException error executing the command line
+	 * @throws MojoFailureException   the command line failed
+	 */
+	protected void executeIncremental(CommandLine cmdLine, File workingDir, Executable executable) 
+		throws MojoExecutionException, MojoFailureException {
+		
+		FlightEvents.Execution event = new FlightEvents.Execution();
+		event.begin();
+		String outcome = "failed";
+		try {
+			outcome = this.executeOrSkip(cmdLine, workingDir, executable);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.module = this.module;
+				event.command = cmdLine.toString();
+				event.workingDir = workingDir.getAbsolutePath();
+				event.outcome = outcome;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * @see #executeIncremental(CommandLine, File, Executable)
+	 * @return the execution outcome : 'up-to-date', 'cached' or 'executed'
+	 */
+	private String executeOrSkip(CommandLine cmdLine, File workingDir, Executable executable) 
+		throws MojoExecutionException, MojoFailureException {
+
+		IncrementalExecution incremental = new IncrementalExecution(
+			this.incremental ? this.incrementalIndex : null,
+			cmdLine,
+			workingDir,
+			this.inputs,
+			this.inputExcludes,
+			this.outputs,
+			this.getLog()
+		);
+		if (incremental.isUpToDate()) {
+			this.getLog().info("Skipping [" + cmdLine.toString() + "] in [" + workingDir + "] : inputs/outputs up-to-date");
+			return "up-to-date";
+		}
+
+		BuildCache cache = this.buildCache == null 
+			? null 
+			: new BuildCache(this.buildCache, this.buildCacheMaxSize * MEGABYTE, this.buildCacheHardLinks, this.getLog());
+		if (cache != null && cache.restore(incremental)) {
+			this.getLog().info("Skipping [" + cmdLine.toString() + "] in [" + workingDir + "] : restored from build cache");
+			incremental.record();
+			return "cached";
+		}
+
+		this.getLog().info("Executing [" + cmdLine.toString() + "] in [" + workingDir.toString() + "]");
+		executable.execute(cmdLine);
+		incremental.record();
+
+		if (cache != null) {
+			cache.store(incremental);
+		}
+		return "executed";
+	}
 	
 	protected static boolean isWindows() {
 		return System.getProperty("os.name").toLowerCase().contains("win");
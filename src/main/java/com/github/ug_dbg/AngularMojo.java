@@ -1,9 +1,6 @@
 package com.github.ug_dbg;
 
 import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -11,7 +8,6 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.File;
-import java.io.IOException;
 
 /**
  * Goal which executes Angular ng command.
@@ -38,43 +34,43 @@ public class AngularMojo extends AbstractMojo {
 	private File workingDir;
 
 	/**
-	 * The directory that contains ng executable. Optional. If not specified,
-	 * we will assume that ng is in the system path.
+	 * The directory that contains ng executable. Optional. If not specified, ng is resolved
+	 * from the 'node_modules/.bin' directories, then {@link #npmHome}, then the system path (see {@link Executables}).
 	 */
 	@Parameter(property = "ng.home")
 	private File ngHome;
+
+	/**
+	 * The directory that contains npm executable. Optional. Used to resolve ng if {@link #ngHome} is not specified.
+	 */
+	@Parameter(property = "npm.home")
+	private File npmHome;
 	
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		this.executeOrStart("ng " + this.command, new TaskScheduler.Task() {
+			public void run() throws MojoExecutionException, MojoFailureException {
+				AngularMojo.this.executeGoal();
+			}
+		});
+	}
+
+	private void executeGoal() throws MojoExecutionException, MojoFailureException {
 		for (String arg : this.args) {
 			CommandLine cmd = this.addCommand(this.getNGCommand());
 			for (String parsedArgument : parseArgument(arg)) {
 				cmd = cmd.addArgument(parsedArgument);
 			}
 			
-			this.getLog().info("Executing [" + cmd.toString() + "] in [" + this.workingDir.toString() + "]");
-			this.execute(cmd);
+			this.executeIncremental(cmd, this.workingDir, new Executable() {
+				public void execute(CommandLine cmdLine) throws MojoExecutionException, MojoFailureException {
+					AngularMojo.this.execute(cmdLine);
+				}
+			});
 		}
 	}
 	
 	private void execute(CommandLine cmdLine) throws MojoExecutionException, MojoFailureException {
-		try {
-			DefaultExecutor executor = new DefaultExecutor();
-			executor.setWorkingDirectory(this.workingDir);
-			
-			if (this.useLogHandler()) {
-				executor.setStreamHandler(new PumpStreamHandler(
-					new LogHandler.StdOut(this.getLog(), this.logLevel(), "ERROR", "WARNING", "DEBUG"),
-					new LogHandler.StdErr(this.getLog(), this.logLevel(), "ERROR", "WARNING", "DEBUG"),
-					System.in
-				));
-			}
-
-			executor.execute(cmdLine);
-		} catch (ExecuteException e) {
-			throw new MojoFailureException("Angular ng failure", e);
-		} catch (IOException e) {
-			throw new MojoExecutionException("Error executing Angular ng", e);
-		}
+		new CommandExecutor(this, "Angular ng", "ERROR", "WARNING", "DEBUG").execute(cmdLine, this.workingDir);
 	}
 	
 	private CommandLine addCommand(CommandLine cmdLine) {
@@ -82,6 +78,16 @@ public class AngularMojo extends AbstractMojo {
 	}
 
 	private CommandLine getNGCommand() {
-		return getCommand("ng", this.ngHome);
+		if (this.ngHome != null) {
+			return getCommand("ng", this.ngHome);
+		}
+
+		File ng = Executables.resolve("ng", this.workingDir, this.npmHome);
+		if (ng == null) {
+			this.getLog().debug("ng not found in node_modules/.bin, npm home or the system path");
+			return getCommand("ng", null);
+		}
+		this.getLog().debug("Resolved ng : [" + ng + "]");
+		return Executables.commandLine(ng);
 	}
 }
@@ -0,0 +1,358 @@
+package com.github.ug_dbg;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A maven {@link Log} decorator that does not write to the delegate log on the caller thread.
+ * <br>
+ * The caller threads (e.g. the process stream pumps) push the log entries into a bounded lock-free ring buffer.
+ * A single consumer thread drains them, in batches, to the delegate log.
+ * A slow maven console then no longer blocks the stream pumps, and so the child process, unless {@link Overflow#BLOCK}.
+ * <br>
+ * When the buffer is full, the behavior depends on the {@link Overflow} policy.
+ * <br>
+ * {@link #close()} waits for the buffer to be drained.
+ */
+class AsyncLog implements Log, Closeable {
+
+	/** What to do when the buffer is full. */
+	protected enum Overflow {
+		/** Wait for the consumer to free some space : no line is lost, but the child process may stall. */
+		BLOCK,
+		/** Drop the oldest buffered line to make room for the new one. */
+		DROP_OLDEST,
+		/** Drop the new line. The consumer logs how many lines were dropped. */
+		SUMMARIZE
+	}
+
+	/** The max number of entries the consumer writes before checking the dropped lines summary. */
+	private static final int BATCH_SIZE = 256;
+
+	/** How long the consumer sleeps when the buffer is empty, in nanoseconds. */
+	private static final long IDLE_PARK = 10 * 1000 * 1000;
+
+	/** How long a blocked producer sleeps before trying again, in nanoseconds. */
+	private static final long BLOCKED_PARK = 100 * 1000;
+
+	private static final int DEBUG = 0;
+	private static final int INFO  = 1;
+	private static final int WARN  = 2;
+	private static final int ERROR = 3;
+
+	private final Log delegate;
+	private final Overflow overflow;
+	private final RingBuffer buffer;
+	private final Thread consumer;
+	private final AtomicBoolean idle = new AtomicBoolean();
+	private volatile boolean closed;
+
+	private final AtomicLong lines = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong blocked = new AtomicLong();
+	private final AtomicLong unreported = new AtomicLong();
+
+	/**
+	 * Create an asynchronous log and start its consumer thread.
+	 * @param delegate the log to write to
+	 * @param capacity the buffer capacity (rounded up to a power of 2)
+	 * @param overflow the overflow policy
+	 */
+	AsyncLog(Log delegate, int capacity, Overflow overflow) {
+		this.delegate = delegate;
+		this.overflow = overflow;
+		this.buffer = new RingBuffer(capacity);
+		this.consumer = new Thread(new Runnable() {
+			public void run() {
+				AsyncLog.this.consume();
+			}
+		}, "npm-log");
+		this.consumer.setDaemon(true);
+		this.consumer.start();
+	}
+
+	/**
+	 * The number of lines dropped because the buffer was full.
+	 * @return the dropped lines count
+	 */
+	long dropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * The number of times a producer had to wait for the consumer ({@link Overflow#BLOCK}).
+	 * @return the blocked producers count
+	 */
+	long blocked() {
+		return this.blocked.get();
+	}
+
+	/**
+	 * Drain the buffer, stop the consumer thread and log the counters.
+	 * Any entry logged after this is written synchronously.
+	 */
+	public void close() {
+		this.closed = true;
+		LockSupport.unpark(this.consumer);
+		try {
+			this.consumer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// An entry may have been offered while the consumer was stopping
+		Entry entry;
+		while ((entry = this.buffer.poll()) != null) {
+			this.write(entry);
+		}
+		this.reportDropped();
+
+		this.delegate.debug(
+			"Async log : [" + this.lines.get() + "] line(s), "
+			+ "[" + this.dropped.get() + "] dropped, "
+			+ "[" + this.blocked.get() + "] blocked producer(s)"
+		);
+	}
+
+	private void offer(int level, CharSequence content, Throwable error) {
+		Entry entry = new Entry(level, content, error);
+		if (this.closed) {
+			this.write(entry);
+			return;
+		}
+
+		FlightEvents.LogBackpressure event = null;
+		while (! this.buffer.offer(entry)) {
+			if (event == null) {
+				event = new FlightEvents.LogBackpressure();
+				event.begin();
+			}
+			event.attempts++;
+			switch (this.overflow) {
+				case DROP_OLDEST:
+					if (this.buffer.poll() != null) {
+						this.dropped.incrementAndGet();
+						this.unreported.incrementAndGet();
+						event.dropped = true;
+					}
+					break;
+				case SUMMARIZE:
+					this.dropped.incrementAndGet();
+					this.unreported.incrementAndGet();
+					event.dropped = true;
+					this.commit(event);
+					return;
+				default:
+					this.blocked.incrementAndGet();
+					LockSupport.unpark(this.consumer);
+					LockSupport.parkNanos(BLOCKED_PARK);
+			}
+		}
+		if (event != null) {
+			this.commit(event);
+		}
+
+		if (this.idle.get()) {
+			LockSupport.unpark(this.consumer);
+		}
+	}
+
+	private void commit(FlightEvents.LogBackpressure event) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.overflow = this.overflow.name();
+			event.commit();
+		}
+	}
+
+	private void consume() {
+		while (true) {
+			int count = 0;
+			Entry entry;
+			while (count < BATCH_SIZE && (entry = this.buffer.poll()) != null) {
+				this.write(entry);
+				count++;
+			}
+			this.reportDropped();
+
+			if (count > 0) {
+				continue;
+			}
+			if (this.closed && this.buffer.isEmpty()) {
+				return;
+			}
+
+			this.idle.set(true);
+			if (this.buffer.isEmpty() && ! this.closed) {
+				LockSupport.parkNanos(IDLE_PARK);
+			}
+			this.idle.set(false);
+		}
+	}
+
+	private void reportDropped() {
+		long count = this.unreported.getAndSet(0);
+		if (count > 0) {
+			this.delegate.warn("[" + count + "] line(s) dropped : the log output is too slow (" + this.overflow + ")");
+		}
+	}
+
+	private void write(Entry entry) {
+		this.lines.incrementAndGet();
+		switch (entry.level) {
+			case DEBUG: this.delegate.debug(entry.content, entry.error); break;
+			case INFO:  this.delegate.info(entry.content, entry.error);  break;
+			case WARN:  this.delegate.warn(entry.content, entry.error);  break;
+			default:    this.delegate.error(entry.content, entry.error);
+		}
+	}
+
+	public boolean isDebugEnabled() {
+		return this.delegate.isDebugEnabled();
+	}
+
+	public void debug(CharSequence content) {
+		this.offer(DEBUG, content, null);
+	}
+
+	public void debug(CharSequence content, Throwable error) {
+		this.offer(DEBUG, content, error);
+	}
+
+	public void debug(Throwable error) {
+		this.offer(DEBUG, null, error);
+	}
+
+	public boolean isInfoEnabled() {
+		return this.delegate.isInfoEnabled();
+	}
+
+	public void info(CharSequence content) {
+		this.offer(INFO, content, null);
+	}
+
+	public void info(CharSequence content, Throwable error) {
+		this.offer(INFO, content, error);
+	}
+
+	public void info(Throwable error) {
+		this.offer(INFO, null, error);
+	}
+
+	public boolean isWarnEnabled() {
+		return this.delegate.isWarnEnabled();
+	}
+
+	public void warn(CharSequence content) {
+		this.offer(WARN, content, null);
+	}
+
+	public void warn(CharSequence content, Throwable error) {
+		this.offer(WARN, content, error);
+	}
+
+	public void warn(Throwable error) {
+		this.offer(WARN, null, error);
+	}
+
+	public boolean isErrorEnabled() {
+		return this.delegate.isErrorEnabled();
+	}
+
+	public void error(CharSequence content) {
+		this.offer(ERROR, content, null);
+	}
+
+	public void error(CharSequence content, Throwable error) {
+		this.offer(ERROR, content, error);
+	}
+
+	public void error(Throwable error) {
+		this.offer(ERROR, null, error);
+	}
+
+	/** A log entry. */
+	private static class Entry {
+		private final int level;
+		private final CharSequence content;
+		private final Throwable error;
+
+		private Entry(int level, CharSequence content, Throwable error) {
+			this.level = level;
+			this.content = content;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * A bounded multi-producer multi-consumer lock-free ring buffer (D. Vyukov's algorithm).
+	 * <br>
+	 * Each slot has a sequence number that tells whether it can be written (sequence == position)
+	 * or read (sequence == position + 1). Producers and consumers claim a position with a CAS.
+	 * Several consumers are required by {@link Overflow#DROP_OLDEST} : the producers poll too.
+	 */
+	private static class RingBuffer {
+		private final int mask;
+		private final AtomicReferenceArray<Entry> entries;
+		private final AtomicLongArray sequences;
+		private final AtomicLong head = new AtomicLong();
+		private final AtomicLong tail = new AtomicLong();
+
+		private RingBuffer(int capacity) {
+			int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+			this.mask = size - 1;
+			this.entries = new AtomicReferenceArray<Entry>(size);
+			this.sequences = new AtomicLongArray(size);
+			for (int i = 0; i < size; i++) {
+				this.sequences.set(i, i);
+			}
+		}
+
+		private boolean offer(Entry entry) {
+			long position = this.tail.get();
+			while (true) {
+				int index = (int) (position & this.mask);
+				long difference = this.sequences.get(index) - position;
+				if (difference == 0) {
+					if (this.tail.compareAndSet(position, position + 1)) {
+						this.entries.set(index, entry);
+						this.sequences.set(index, position + 1);
+						return true;
+					}
+				} else if (difference < 0) {
+					return false;
+				}
+				position = this.tail.get();
+			}
+		}
+
+		private Entry poll() {
+			long position = this.head.get();
+			while (true) {
+				int index = (int) (position & this.mask);
+				long difference = this.sequences.get(index) - (position + 1);
+				if (difference == 0) {
+					if (this.head.compareAndSet(position, position + 1)) {
+						Entry entry = this.entries.get(index);
+						this.entries.set(index, null);
+						this.sequences.set(index, position + this.mask + 1);
+						return entry;
+					}
+				} else if (difference < 0) {
+					return null;
+				}
+				position = this.head.get();
+			}
+		}
+
+		private boolean isEmpty() {
+			return this.head.get() >= this.tail.get();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.github.ug_dbg;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.util.List;
+
+/**
+ * Goal which waits for the goals of the current project that were started in the background ('npm.background').
+ * <br>
+ * Their buffered log is written and the first failure is propagated, once they all completed.
+ */
+@Mojo(name = "await", threadSafe = true, defaultPhase = LifecyclePhase.PREPARE_PACKAGE)
+public class AwaitMojo extends AbstractMojo {
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		List<BackgroundExecutions> executions = BackgroundExecutions.take(this.projectId());
+		if (executions.isEmpty()) {
+			this.getLog().info("No background execution to wait for");
+			return;
+		}
+
+		Exception failure = null;
+		for (BackgroundExecutions execution : executions) {
+			this.getLog().info("Waiting for [" + execution.name() + "]");
+			try {
+				execution.await(this.getLog());
+			} catch (MojoExecutionException e) {
+				failure = failure == null ? e : failure;
+			} catch (MojoFailureException e) {
+				failure = failure == null ? e : failure;
+			}
+		}
+
+		if (failure instanceof MojoExecutionException) {
+			throw (MojoExecutionException) failure;
+		}
+		if (failure instanceof MojoFailureException) {
+			throw (MojoFailureException) failure;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.github.ug_dbg;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.List;
+
+/**
+ * A maven extension that fails the build if a goal started in the background ('npm.background') failed 
+ * and was never awaited ('await' goal), at the end of the session.
+ * <br>
+ * Enabled by declaring the plugin with &lt;extensions&gt;true&lt;/extensions&gt;. 
+ * Without it, the unawaited executions are only reported when the JVM exits.
+ */
+@Named("npm-background-check")
+@Singleton
+public class BackgroundCheckParticipant extends AbstractMavenLifecycleParticipant {
+
+	private final Log log;
+
+	@Inject
+	public BackgroundCheckParticipant(Logger logger) {
+		this.log = new DefaultLog(logger);
+	}
+
+	@Override
+	public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
+		List<String> failed = BackgroundExecutions.checkUnawaited(this.log);
+		if (! failed.isEmpty()) {
+			throw new MavenExecutionException(
+				"Background execution(s) " + failed + " failed and were never awaited. Use the 'await' goal.", 
+				(File) null
+			);
+		}
+	}
+}
@@ -0,0 +1,405 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The goals started in the background ('npm.background') of the maven modules, until they are awaited ('await' goal).
+ * <br>
+ * A background goal runs on a daemon thread. Its log entries are buffered and written when the goal is awaited,
+ * so they do not interleave with the log of the goals that run in the meantime (e.g. compile, test).
+ * <br>
+ * The executions that were never awaited are reported at the end of the session, or when the JVM exits
+ * (see {@link #checkUnawaited(Log)}).
+ */
+class BackgroundExecutions {
+
+	/** The background executions of each maven module, in start order. */
+	private static final Map<String, List<BackgroundExecutions>> EXECUTIONS = new HashMap<String, List<BackgroundExecutions>>();
+
+	/** Is the shutdown hook that checks the unawaited executions registered ? */
+	private static boolean shutdownCheck;
+
+	private final String name;
+	private final BufferedLog log;
+	private final FutureTask<Void> future;
+
+	private BackgroundExecutions(String name, BufferedLog log, final TaskScheduler.Task task) {
+		this.name = name;
+		this.log = log;
+		this.future = new FutureTask<Void>(new Callable<Void>() {
+			public Void call() throws Exception {
+				task.run();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Start a goal in the background.
+	 * @param module the maven module (groupId:artifactId), or any key to {@link #take(String)} the execution
+	 * @param name   the execution name, for the logs
+	 * @param log    the log of the task, written when the execution is {@link #await(Log)}ed
+	 * @param task   the task to run
+	 */
+	static void start(String module, String name, BufferedLog log, TaskScheduler.Task task) {
+		BackgroundExecutions execution = new BackgroundExecutions(name, log, task);
+		synchronized (EXECUTIONS) {
+			if (! shutdownCheck) {
+				shutdownCheck = true;
+				Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+					public void run() {
+						checkUnawaited(new SystemStreamLog());
+					}
+				}, "npm-background-check"));
+			}
+			List<BackgroundExecutions> executions = EXECUTIONS.get(module);
+			if (executions == null) {
+				executions = new ArrayList<BackgroundExecutions>();
+				EXECUTIONS.put(module, executions);
+			}
+			executions.add(execution);
+		}
+
+		Thread thread = new Thread(execution.future, "npm-background-" + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Remove the background executions of a maven module, so they can be awaited.
+	 * @param module the maven module (groupId:artifactId)
+	 * @return the module background executions, in start order. Never null.
+	 */
+	static List<BackgroundExecutions> take(String module) {
+		synchronized (EXECUTIONS) {
+			List<BackgroundExecutions> executions = EXECUTIONS.remove(module);
+			return executions == null ? new ArrayList<BackgroundExecutions>() : executions;
+		}
+	}
+
+	/**
+	 * Check the executions that were never awaited (e.g. a background goal without 'await', an early install whose goal did not run) :
+	 * at the end of the maven session ({@link BackgroundCheckParticipant}), or when the JVM exits.
+	 * Their buffered log is written. An execution that is still running is terminated with maven.
+	 * @param log the log to write to
+	 * @return the names of the unawaited executions that failed. Never null.
+	 */
+	static List<String> checkUnawaited(Log log) {
+		List<BackgroundExecutions> executions = new ArrayList<BackgroundExecutions>();
+		synchronized (EXECUTIONS) {
+			for (List<BackgroundExecutions> module : EXECUTIONS.values()) {
+				executions.addAll(module);
+			}
+			EXECUTIONS.clear();
+		}
+
+		List<String> failed = new ArrayList<String>();
+		for (BackgroundExecutions execution : executions) {
+			execution.log.replay(log);
+			if (! execution.future.isDone()) {
+				log.warn("[" + execution.name + "] was started in the background and never awaited : it is still running");
+				continue;
+			}
+			try {
+				execution.future.get();
+				log.warn("[" + execution.name + "] was started in the background and never awaited. Use the 'await' goal.");
+			} catch (ExecutionException e) {
+				log.error("[" + execution.name + "] failed in the background and was never awaited", e.getCause());
+				failed.add(execution.name);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return failed;
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * The execution name.
+	 * @return the name given when the execution was started
+	 */
+	String name() {
+		return this.name;
+	}
+
+	/**
+	 * Wait for the execution to complete, write its buffered log and propagate its failure.
+	 * Any entry it logs after this is written directly.
+	 * @param log the log to write the buffered entries to
+	 * @throws MojoExecutionException the execution failed or the current thread was interrupted
+	 * @throws MojoFailureException   the execution failed
+	 */
+	void await(Log log) throws MojoExecutionException, MojoFailureException {
+		try {
+			this.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted waiting for [" + this.name + "]", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof MojoFailureException) {
+				throw (MojoFailureException) cause;
+			}
+			if (cause instanceof MojoExecutionException) {
+				throw (MojoExecutionException) cause;
+			}
+			throw new MojoExecutionException("Error executing [" + this.name + "] in the background", cause);
+		} finally {
+			this.log.replay(log);
+		}
+	}
+
+	/**
+	 * A log that buffers its entries until it is replayed. The enabled levels are those of the delegate log.
+	 * <br>
+	 * At most {@link #MAX_ENTRIES} entries are kept in memory : the next ones are spilled to a temporary file
+	 * (e.g. in target/), so a verbose background goal does not fill the maven heap. 
+	 * Without a spill directory, or on a spill file error, they are dropped and counted.
+	 */
+	static class BufferedLog implements Log {
+		private static final int DEBUG = 0;
+		private static final int INFO  = 1;
+		private static final int WARN  = 2;
+		private static final int ERROR = 3;
+
+		/** The max number of entries kept in memory. */
+		static final int MAX_ENTRIES = 10000;
+
+		private static final Charset UTF8 = Charset.forName("UTF-8");
+
+		private final Log delegate;
+		private final File spillDirectory;
+		private final int maxEntries;
+
+		/** The buffered entries, null once replayed. */
+		private List<Entry> entries = new ArrayList<Entry>();
+
+		/** The spill file and its writer, null until the memory buffer is full. */
+		private File spill;
+		private DataOutputStream spillOutput;
+		private int dropped;
+
+		/** The log the entries were replayed to. */
+		private Log replayed;
+
+		/**
+		 * Create a buffered log.
+		 * @param delegate       the log whose levels are enabled
+		 * @param spillDirectory the directory of the spill file (e.g. the project build directory). Can be null.
+		 */
+		BufferedLog(Log delegate, File spillDirectory) {
+			this(delegate, spillDirectory, MAX_ENTRIES);
+		}
+
+		/**
+		 * Create a buffered log.
+		 * @param delegate       the log whose levels are enabled
+		 * @param spillDirectory the directory of the spill file. Can be null.
+		 * @param maxEntries     the max number of entries kept in memory
+		 */
+		BufferedLog(Log delegate, File spillDirectory, int maxEntries) {
+			this.delegate = delegate;
+			this.spillDirectory = spillDirectory;
+			this.maxEntries = maxEntries;
+		}
+
+		/**
+		 * Write the buffered entries to a log. The entries logged afterwards are written to it directly.
+		 * @param log the log to write to
+		 */
+		synchronized void replay(Log log) {
+			if (this.entries == null) {
+				return;
+			}
+			for (Entry entry : this.entries) {
+				write(log, entry.level, entry.content, entry.error);
+			}
+			this.replaySpill(log);
+			if (this.dropped > 0) {
+				log.warn("[" + this.dropped + "] background log entries were dropped");
+			}
+			this.entries = null;
+			this.replayed = log;
+		}
+
+		/**
+		 * Write the spilled entries to a log, then delete the spill file.
+		 */
+		private void replaySpill(Log log) {
+			if (this.spill == null) {
+				return;
+			}
+			IOUtils.closeQuietly(this.spillOutput);
+			DataInputStream input = null;
+			try {
+				input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.spill)));
+				while (true) {
+					int level;
+					try {
+						level = input.readByte();
+					} catch (EOFException e) {
+						break;
+					}
+					byte[] content = new byte[input.readInt()];
+					input.readFully(content);
+					write(log, level, new String(content, UTF8), null);
+				}
+			} catch (IOException e) {
+				log.warn("Error reading the background log spill file [" + this.spill + "]", e);
+			} finally {
+				IOUtils.closeQuietly(input);
+				FileUtils.deleteQuietly(this.spill);
+				this.spill = null;
+				this.spillOutput = null;
+			}
+		}
+
+		private synchronized void add(int level, CharSequence content, Throwable error) {
+			if (this.entries == null) {
+				write(this.replayed, level, content, error);
+			} else if (this.entries.size() < this.maxEntries) {
+				this.entries.add(new Entry(level, content, error));
+			} else {
+				this.spill(level, content, error);
+			}
+		}
+
+		/**
+		 * Append an entry to the spill file, the error as its stack trace.
+		 */
+		private void spill(int level, CharSequence content, Throwable error) {
+			if (this.spillDirectory == null) {
+				this.dropped++;
+				return;
+			}
+			try {
+				if (this.spill == null) {
+					FileUtils.forceMkdir(this.spillDirectory);
+					this.spill = File.createTempFile("npm-background-", ".log", this.spillDirectory);
+					this.spill.deleteOnExit();
+					this.spillOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.spill)));
+				}
+				String text = content == null ? "" : content.toString();
+				if (error != null) {
+					text = text + (text.isEmpty() ? "" : "\n") + ExceptionUtils.getStackTrace(error);
+				}
+				byte[] bytes = text.getBytes(UTF8);
+				this.spillOutput.writeByte(level);
+				this.spillOutput.writeInt(bytes.length);
+				this.spillOutput.write(bytes);
+			} catch (IOException e) {
+				this.dropped++;
+			}
+		}
+
+		private static void write(Log log, int level, CharSequence content, Throwable error) {
+			switch (level) {
+				case DEBUG: log.debug(content, error); break;
+				case INFO:  log.info(content, error);  break;
+				case WARN:  log.warn(content, error);  break;
+				default:    log.error(content, error);
+			}
+		}
+
+		public boolean isDebugEnabled() {
+			return this.delegate.isDebugEnabled();
+		}
+
+		public void debug(CharSequence content) {
+			this.add(DEBUG, content, null);
+		}
+
+		public void debug(CharSequence content, Throwable error) {
+			this.add(DEBUG, content, error);
+		}
+
+		public void debug(Throwable error) {
+			this.add(DEBUG, null, error);
+		}
+
+		public boolean isInfoEnabled() {
+			return this.delegate.isInfoEnabled();
+		}
+
+		public void info(CharSequence content) {
+			this.add(INFO, content, null);
+		}
+
+		public void info(CharSequence content, Throwable error) {
+			this.add(INFO, content, error);
+		}
+
+		public void info(Throwable error) {
+			this.add(INFO, null, error);
+		}
+
+		public boolean isWarnEnabled() {
+			return this.delegate.isWarnEnabled();
+		}
+
+		public void warn(CharSequence content) {
+			this.add(WARN, content, null);
+		}
+
+		public void warn(CharSequence content, Throwable error) {
+			this.add(WARN, content, error);
+		}
+
+		public void warn(Throwable error) {
+			this.add(WARN, null, error);
+		}
+
+		public boolean isErrorEnabled() {
+			return this.delegate.isErrorEnabled();
+		}
+
+		public void error(CharSequence content) {
+			this.add(ERROR, content, null);
+		}
+
+		public void error(CharSequence content, Throwable error) {
+			this.add(ERROR, content, error);
+		}
+
+		public void error(Throwable error) {
+			this.add(ERROR, null, error);
+		}
+
+		/** A log entry. */
+		private static class Entry {
+			private final int level;
+			private final CharSequence content;
+			private final Throwable error;
+
+			private Entry(int level, CharSequence content, Throwable error) {
+				this.level = level;
+				this.content = content;
+				this.error = error;
+			}
+		}
+	}
+}
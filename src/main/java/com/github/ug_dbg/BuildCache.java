@@ -0,0 +1,290 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local, content addressed, cache of the outputs of an {@link IncrementalExecution}.
+ * <br>
+ * An entry is keyed by {@link IncrementalExecution#getCacheKey()} (command line, inputs/outputs declaration, inputs hash).
+ * It is a directory that contains a copy of each declared output and an 'entry.properties' description file.
+ * <br>
+ * On a cache hit, the outputs are restored (copied or hard linked) instead of running the command.
+ * The cache size is bounded : the least recently used entries are evicted when the cache grows over its max size.
+ * <br>
+ * Any I/O error is logged : a cache error should never fail the build.
+ */
+class BuildCache {
+
+	private static final String ENTRY_FILE = "entry.properties";
+	private static final String TMP_SUFFIX = ".tmp";
+	private static final String OUTPUT_TYPE = "output.type.";
+	private static final String SIZE = "size";
+
+	private static final String TYPE_DIRECTORY = "directory";
+	private static final String TYPE_FILE = "file";
+	private static final String TYPE_MISSING = "missing";
+
+	/** 
+	 * How old a temporary entry directory must be to be deleted by the eviction, in milliseconds : 
+	 * younger ones may be being written by a concurrent build. 
+	 */
+	private static final long TMP_GRACE_PERIOD = 24 * 60 * 60 * 1000L;
+
+	/** Eviction and storage can run concurrently, from several executions of a parallel goal. */
+	private static final Object EVICTION_LOCK = new Object();
+
+	private final File directory;
+	private final long maxSize;
+	private final boolean hardLinks;
+	private final Log log;
+
+	/**
+	 * Create a build cache.
+	 * @param directory the cache directory (e.g. ~/.m2/npm-cache)
+	 * @param maxSize   the max cache size, in bytes
+	 * @param hardLinks true to hard link the files from/to the cache instead of copying them, when possible
+	 * @param log       the maven logger
+	 */
+	BuildCache(File directory, long maxSize, boolean hardLinks, Log log) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.hardLinks = hardLinks;
+		this.log = log;
+	}
+
+	/**
+	 * Restore the outputs of an execution from the cache, if any.
+	 * @param execution the incremental execution. Its inputs hash must have been computed.
+	 * @return true if the outputs were restored
+	 */
+	boolean restore(IncrementalExecution execution) {
+		String key = execution.getCacheKey();
+		if (key == null) {
+			return false;
+		}
+
+		File entry = new File(this.directory, key);
+		File entryFile = new File(entry, ENTRY_FILE);
+		if (! entryFile.isFile()) {
+			this.log.debug("Build cache miss [" + key + "]");
+			return false;
+		}
+
+		try {
+			Properties properties = read(entryFile);
+			List<File> outputs = execution.outputs();
+			for (int i = 0; i < outputs.size(); i++) {
+				File output = outputs.get(i);
+				String type = properties.getProperty(OUTPUT_TYPE + i, TYPE_MISSING);
+				FileUtils.deleteQuietly(output);
+				if (! TYPE_MISSING.equals(type)) {
+					this.transfer(new File(entry, String.valueOf(i)).toPath(), output.toPath());
+				}
+			}
+
+			// Last modification date of the entry file is the 'last access' for the LRU eviction
+			if (! entryFile.setLastModified(System.currentTimeMillis())) {
+				this.log.debug("Could not touch build cache entry [" + entryFile + "]");
+			}
+			this.log.info("Restored [" + outputs.size() + "] output(s) from build cache entry [" + key + "]");
+			return true;
+		} catch (IOException e) {
+			this.log.warn("Could not restore build cache entry [" + key + "]", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Store the outputs of a successful execution into the cache, then evict the least recently used entries if required.
+	 * @param execution the incremental execution. Its inputs hash must have been computed.
+	 */
+	void store(IncrementalExecution execution) {
+		String key = execution.getCacheKey();
+		if (key == null) {
+			return;
+		}
+
+		File entry = new File(this.directory, key);
+		if (entry.isDirectory()) {
+			return;
+		}
+
+		// Write into a temporary directory then rename it, so a concurrent build never reads a partial entry
+		File tmp = new File(this.directory, key + "." + UUID.randomUUID() + TMP_SUFFIX);
+		try {
+			FileUtils.forceMkdir(tmp);
+			Properties properties = new Properties();
+			long size = 0;
+			List<File> outputs = execution.outputs();
+			for (int i = 0; i < outputs.size(); i++) {
+				File output = outputs.get(i);
+				String type = output.isDirectory() ? TYPE_DIRECTORY : output.isFile() ? TYPE_FILE : TYPE_MISSING;
+				properties.setProperty(OUTPUT_TYPE + i, type);
+				if (! TYPE_MISSING.equals(type)) {
+					size += this.transfer(output.toPath(), new File(tmp, String.valueOf(i)).toPath());
+				}
+			}
+			properties.setProperty(SIZE, String.valueOf(size));
+			write(new File(tmp, ENTRY_FILE), properties);
+
+			if (! tmp.renameTo(entry)) {
+				this.log.debug("Build cache entry [" + key + "] already stored");
+				return;
+			}
+			this.log.info("Stored [" + outputs.size() + "] output(s) into build cache entry [" + key + "]");
+		} catch (IOException e) {
+			this.log.warn("Could not store build cache entry [" + key + "]", e);
+		} finally {
+			FileUtils.deleteQuietly(tmp);
+		}
+
+		this.evict();
+	}
+
+	/**
+	 * Delete the least recently used entries until the cache size is under {@link #maxSize}.
+	 * The temporary entries older than {@link #TMP_GRACE_PERIOD} are deleted too.
+	 */
+	private void evict() {
+		synchronized (EVICTION_LOCK) {
+			File[] files = this.directory.listFiles();
+			if (files == null) {
+				return;
+			}
+
+			long total = 0;
+			List<File> entries = new ArrayList<File>();
+			long now = System.currentTimeMillis();
+			for (File file : files) {
+				File entryFile = new File(file, ENTRY_FILE);
+				if (file.getName().endsWith(TMP_SUFFIX)) {
+					// Left by a killed build : the entry was never renamed
+					if (now - file.lastModified() > TMP_GRACE_PERIOD && FileUtils.deleteQuietly(file)) {
+						this.log.debug("Deleted stale build cache temporary entry [" + file.getName() + "]");
+					}
+					continue;
+				}
+				if (! entryFile.isFile()) {
+					continue;
+				}
+				try {
+					total += Long.parseLong(read(entryFile).getProperty(SIZE, "0"));
+					entries.add(file);
+				} catch (IOException e) {
+					this.log.debug("Could not read build cache entry [" + file + "]", e);
+				} catch (NumberFormatException e) {
+					this.log.debug("Invalid build cache entry [" + file + "]", e);
+				}
+			}
+
+			if (total <= this.maxSize) {
+				return;
+			}
+
+			Collections.sort(entries, new Comparator<File>() {
+				public int compare(File o1, File o2) {
+					long t1 = new File(o1, ENTRY_FILE).lastModified();
+					long t2 = new File(o2, ENTRY_FILE).lastModified();
+					return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+				}
+			});
+
+			for (File entry : entries) {
+				if (total <= this.maxSize) {
+					break;
+				}
+				try {
+					long size = Long.parseLong(read(new File(entry, ENTRY_FILE)).getProperty(SIZE, "0"));
+					FileUtils.deleteDirectory(entry);
+					total -= size;
+					this.log.debug("Evicted build cache entry [" + entry.getName() + "] (" + size + " bytes)");
+				} catch (IOException e) {
+					this.log.warn("Could not evict build cache entry [" + entry + "]", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copy (or hard link) a file or a directory tree.
+	 * @param source the source file or directory
+	 * @param target the target file or directory, that must not exist
+	 * @return the number of bytes transferred
+	 * @throws IOException error walking or transferring the files
+	 */
+	private long transfer(final Path source, final Path target) throws IOException {
+		final AtomicLong size = new AtomicLong();
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				BuildCache.this.transferFile(file, target.resolve(source.relativize(file).toString()));
+				size.addAndGet(attrs.size());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return size.get();
+	}
+
+	private void transferFile(Path source, Path target) throws IOException {
+		Files.createDirectories(target.getParent());
+		if (this.hardLinks) {
+			try {
+				Files.createLink(target, source);
+				return;
+			} catch (IOException e) {
+				this.log.debug("Could not hard link [" + source + "] to [" + target + "]. Copying.");
+			} catch (UnsupportedOperationException e) {
+				this.log.debug("Hard links not supported for [" + target + "]. Copying.");
+			}
+		}
+		Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+	}
+
+	private static Properties read(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream input = new FileInputStream(file);
+		try {
+			properties.load(input);
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+		return properties;
+	}
+
+	private static void write(File file, Properties properties) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		try {
+			properties.store(output, "mvn-npm-plugin build cache entry");
+		} finally {
+			output.close();
+		}
+	}
+}
@@ -1,13 +1,19 @@
 package com.github.ug_dbg;
 
 
-import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Goal to clean an npm workspace.
@@ -16,10 +22,22 @@ import java.io.IOException;
  *     <li>dist</li>
  *     <li>node-modules</li>
  *     <li>package-lock</li>
+ *     <li>any file or directory that matches the delete patterns</li>
  * </ul>
+ * Directories are deleted using a {@link ParallelDelete}, or moved to the {@link Trash} and deleted in background.
  */
 @Mojo(name = "clean", threadSafe = true, defaultPhase = LifecyclePhase.CLEAN)
 public class CleanMojo extends AbstractMojo {
+
+	/** How to delete the directories. */
+	protected enum TrashMode {
+		/** Delete the directories, the goal waits for the deletion to complete. */
+		NONE, 
+		/** Rename the directories to tombstones and delete them on a daemon thread, that dies with the JVM. */
+		THREAD, 
+		/** Rename the directories to tombstones and delete them with a detached process, that survives the JVM. */
+		PROCESS
+	}
 	
 	/** The working directory. Optional. If not specified, basedir will be used. */
 	@Parameter(property = "npm.workingDir", defaultValue = "${basedir}")
@@ -44,40 +62,191 @@ public class CleanMojo extends AbstractMojo {
 	/** If 'true', delete the package-lock file. Default is 'false'. */
 	@Parameter(property = "npm.deletePackageLock", defaultValue = "false")
 	private boolean deletePackageLock;
+
+	/** 
+	 * Glob patterns of other files or directories to delete, relative to the working directory.
+	 * (e.g. '.angular/cache', 'coverage', '**&#47;*.tsbuildinfo'). Optional.
+	 */
+	@Parameter(property = "npm.deletePatterns")
+	private String[] deletePatterns;
+
+	/** The number of threads to delete directories. Optional. If not specified, the number of available processors. */
+	@Parameter(property = "npm.cleanThreads", defaultValue = "0")
+	private int cleanThreads;
+
+	/**
+	 * The trash mode : NONE, THREAD or PROCESS. If not NONE, the directories are renamed to tombstones, 
+	 * that are deleted in background. The tombstones of a previous run are deleted too. Default is 'NONE'.
+	 */
+	@Parameter(property = "npm.trash", defaultValue = "NONE")
+	private TrashMode trash;
 	
 	public void execute() {
-		this.delete(new File(this.workingDir, this.distDir));
+		ParallelDelete engine = new ParallelDelete(this.cleanThreads);
+		Trash trash = this.trash == TrashMode.NONE ? null : new Trash(this.getLog());
+		Set<File> trashDirectories = new LinkedHashSet<File>();
+		trashDirectories.add(this.workingDir);
+
+		this.delete(new File(this.workingDir, this.distDir), engine, trash, trashDirectories);
 		
 		if (this.deleteNodeModules && this.nodeModulesDir != null) {
-			this.delete(new File(this.workingDir, this.nodeModulesDir));
+			this.delete(new File(this.workingDir, this.nodeModulesDir), engine, trash, trashDirectories);
 		}
 		
 		if (this.deletePackageLock && this.packageLockFile != null) {
-			this.delete(new File(this.workingDir, this.packageLockFile));
+			this.delete(new File(this.workingDir, this.packageLockFile), engine, trash, trashDirectories);
+		}
+
+		for (File file : this.matchDeletePatterns()) {
+			this.delete(file, engine, trash, trashDirectories);
+		}
+
+		if (trash != null) {
+			this.emptyTrash(trash, trashDirectories, engine);
 		}
 	}
 
+	/**
+	 * The node modules directory and package-lock file this execution deletes, 
+	 * with {@link #deleteNodeModules}, {@link #deletePackageLock} or a matching {@link #deletePatterns delete pattern}.
+	 * Used by the {@link EarlyInstallParticipant} to not install what the build is about to delete.
+	 * @return the deleted node modules directory and package-lock file, canonical. Never null.
+	 */
+	List<File> deletedInstallFiles() {
+		List<File> deleted = new ArrayList<File>();
+		if (this.nodeModulesDir != null && (this.deleteNodeModules || this.matchesDeletePattern(this.nodeModulesDir))) {
+			deleted.add(canonical(new File(this.workingDir, this.nodeModulesDir)));
+		}
+		if (this.packageLockFile != null && (this.deletePackageLock || this.matchesDeletePattern(this.packageLockFile))) {
+			deleted.add(canonical(new File(this.workingDir, this.packageLockFile)));
+		}
+		return deleted;
+	}
+
+	private boolean matchesDeletePattern(String path) {
+		if (this.deletePatterns == null) {
+			return false;
+		}
+		String normalizedPath = path.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+		for (String pattern : this.deletePatterns) {
+			String normalizedPattern = pattern.trim().replace('/', File.separatorChar).replace('\\', File.separatorChar);
+			if (SelectorUtils.matchPath(normalizedPattern, normalizedPath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static File canonical(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			return file.getAbsoluteFile();
+		}
+	}
+
+	/**
+	 * Delete, in background, the tombstones of this run and of any previous run.
+	 * @param trash            the trash
+	 * @param trashDirectories the directories where to look for tombstones
+	 * @param engine           the delete engine, for the {@link TrashMode#THREAD} mode
+	 */
+	private void emptyTrash(Trash trash, Set<File> trashDirectories, ParallelDelete engine) {
+		List<File> tombstones = new ArrayList<File>();
+		for (File directory : trashDirectories) {
+			tombstones.addAll(Trash.tombstones(directory));
+		}
+		if (tombstones.isEmpty()) {
+			return;
+		}
+
+		this.getLog().info("Deleting [" + tombstones.size() + "] tombstone(s) in background (" + this.trash + ")");
+		if (this.trash == TrashMode.PROCESS) {
+			try {
+				trash.deleteInProcess(tombstones);
+				return;
+			} catch (IOException e) {
+				this.getLog().warn("Could not start the deletion process. Deleting on a daemon thread.", e);
+			}
+		}
+		trash.deleteInThread(tombstones, engine);
+	}
+
+	/**
+	 * Find the files and directories that match the {@link #deletePatterns}.
+	 * A file or directory in a matching directory is not returned : deleting the directory is enough.
+	 * @return the files and directories to delete, in path order
+	 */
+	private List<File> matchDeletePatterns() {
+		List<File> matches = new ArrayList<File>();
+		if (this.deletePatterns == null || this.deletePatterns.length == 0 || ! this.workingDir.isDirectory()) {
+			return matches;
+		}
+
+		DirectoryScanner scanner = new DirectoryScanner();
+		scanner.setBasedir(this.workingDir);
+		scanner.setIncludes(this.deletePatterns);
+		scanner.scan();
+
+		List<String> paths = new ArrayList<String>();
+		Collections.addAll(paths, scanner.getIncludedDirectories());
+		Collections.addAll(paths, scanner.getIncludedFiles());
+		paths.remove("");
+		Collections.sort(paths);
+
+		String lastDirectory = null;
+		for (String path : paths) {
+			if (lastDirectory != null && path.startsWith(lastDirectory + File.separator)) {
+				continue;
+			}
+			File file = new File(this.workingDir, path);
+			matches.add(file);
+			lastDirectory = file.isDirectory() ? path : lastDirectory;
+		}
+		return matches;
+	}
+
 	/**
 	 * Delete a file and log the deletion status.
 	 * Do not throw any exception.
-	 * @param file the file to delete.
+	 * @param file             the file to delete.
+	 * @param engine           the delete engine
+	 * @param trash            the trash to move directories to. Can be null.
+	 * @param trashDirectories the directories that may contain tombstones
 	 */
-	private void delete(File file) {
+	private void delete(File file, ParallelDelete engine, Trash trash, Set<File> trashDirectories) {
 		if (file == null || ! file.exists()) {
 			return;
 		}
 		try {
-			if (file.isDirectory()) {
-				FileUtils.deleteDirectory(file);
-				this.getLog().info("Deleted directory [" + file.toString() + "] : [OK]");
+			if (file.isDirectory() && trash != null && this.moveToTrash(file, trash)) {
+				trashDirectories.add(file.getAbsoluteFile().getParentFile());
+			} else if (file.isDirectory()) {
+				ParallelDelete.Report report = engine.delete(file.toPath());
+				boolean status = report.errorCount() == 0;
+				this.getLog().info(
+					"Deleted directory [" + file.toString() + "] : [" + (status ? "OK" : "KO")  + "] (" + report + ")"
+				);
+				for (IOException error : report.errors()) {
+					this.getLog().error("I/O Error deleting [" + file.toString() + "]", error);
+				}
 			} else {
 				boolean status = file.delete();
 				this.getLog().info("Delete [" + file.toString() + "] : [" + (status ? "OK" : "KO")  + "]");
 			}
-		} catch (IOException e) {
-			this.getLog().error("I/O Error deleting [" + file.toString() + "]", e);
 		} catch (RuntimeException e) {
 			this.getLog().error("Error deleting [" + file.toString() + "]", e);
 		}
 	}
+
+	private boolean moveToTrash(File directory, Trash trash) {
+		try {
+			File tombstone = trash.moveToTrash(directory);
+			this.getLog().info("Trashed directory [" + directory.toString() + "] : [OK] (" + tombstone.getName() + ")");
+			return true;
+		} catch (IOException e) {
+			this.getLog().debug("Could not move [" + directory + "] to trash : " + e.getMessage() + ". Deleting.");
+			return false;
+		}
+	}
 }
@@ -0,0 +1,309 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecuteResultHandler;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.ExecuteStreamHandler;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.exec.ShutdownHookProcessDestroyer;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Execute a command line (npm, ng...) and redirect its output to the maven log of a mojo, with respect to its configuration.
+ */
+class CommandExecutor {
+	private final AbstractMojo mojo;
+	private final String name;
+	private final PrefixTrie prefixes;
+
+	/**
+	 * Create a command executor.
+	 * @param mojo        the mojo that executes the command, for its configuration
+	 * @param name        the command name, for error messages (e.g. 'npm')
+	 * @param errPrefix   the default prefix of the output lines to log as errors
+	 * @param warnPrefix  the default prefix of the output lines to log as warnings
+	 * @param debugPrefix the default prefix of the output lines to log as debug
+	 * @see AbstractMojo#outputPrefixes(String, String, String)
+	 */
+	CommandExecutor(AbstractMojo mojo, String name, String errPrefix, String warnPrefix, String debugPrefix) {
+		this.mojo = mojo;
+		this.name = name;
+		this.prefixes = mojo.outputPrefixes(errPrefix, warnPrefix, debugPrefix);
+	}
+
+	/**
+	 * Execute a command line and wait for its completion.
+	 * @param cmdLine    the command line
+	 * @param workingDir the working directory
+	 * @throws MojoFailureException   the command returned an error exit code
+	 * @throws MojoExecutionException the command could not be executed
+	 */
+	void execute(CommandLine cmdLine, File workingDir) throws MojoFailureException, MojoExecutionException {
+		this.execute(cmdLine, workingDir, null);
+	}
+
+	/**
+	 * Execute a command line with additional environment variables and wait for its completion.
+	 * @param cmdLine     the command line
+	 * @param workingDir  the working directory
+	 * @param environment the variables to add to the maven environment. Can be null.
+	 * @throws MojoFailureException   the command returned an error exit code
+	 * @throws MojoExecutionException the command could not be executed
+	 */
+	void execute(CommandLine cmdLine, File workingDir, Map<String, String> environment) 
+		throws MojoFailureException, MojoExecutionException {
+		
+		ResourceGovernor governor = this.mojo.governor();
+		try {
+			governor.acquire(cmdLine.toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while waiting to execute " + this.name, e);
+		}
+		long start = System.nanoTime();
+		try {
+			this.execute(governor.commandLine(cmdLine, workingDir), workingDir, governor.environment(environment), cmdLine);
+		} finally {
+			governor.release();
+			TaskScheduler.addProcessTime((System.nanoTime() - start) / 1000000);
+		}
+	}
+
+	/**
+	 * Execute a command line, once the resource governor let it run.
+	 * @param cmdLine     the command line to run (e.g. with 'nice')
+	 * @param workingDir  the working directory
+	 * @param environment the variables to add to the maven environment. Can be null.
+	 * @param command     the command line, as configured : for the logs, metrics and events
+	 */
+	private void execute(CommandLine cmdLine, File workingDir, Map<String, String> environment, CommandLine command)
+		throws MojoFailureException, MojoExecutionException {
+
+		Log log = this.mojo.useLogHandler() ? this.mojo.outputLog() : this.mojo.getLog();
+		ExecutionMetrics metrics = this.mojo.startMetrics(command, workingDir);
+		TraceEvents trace = this.mojo.traceEvents();
+		FlightEvents.Process event = new FlightEvents.Process();
+		Executor executor = null;
+		int exitCode = -1;
+		if (trace != null) {
+			trace.begin(this.mojo.module(), command.toString(), workingDir);
+		}
+		try {
+			executor = new Executor(command.toString(), this.mojo.inheritIO() && ! this.mojo.useLogHandler(), metrics);
+			if (this.mojo.useLogHandler()) {
+				LogHandler stdOut = new LogHandler.StdOut(log, this.mojo.logLevel(), this.prefixes).command(command.toString());
+				LogHandler stdErr = new LogHandler.StdErr(log, this.mojo.logLevel(), this.prefixes).command(command.toString());
+				executor.setStreamHandler(new PumpStreamHandler(stdOut, stdErr, System.in));
+				executor.watch(this.mojo.timeout(), this.mojo.hangTimeout(), stdOut, stdErr);
+				if (metrics != null) {
+					metrics.setOutput(stdOut, stdErr);
+				}
+			} else {
+				// The output is not read by the JVM : no hang detection
+				executor.watch(this.mojo.timeout(), 0);
+			}
+			executor.setWorkingDirectory(workingDir);
+			if (this.mojo.background()) {
+				// Do not leave a background process running if the build ends without awaiting it
+				executor.setProcessDestroyer(new ShutdownHookProcessDestroyer());
+			}
+
+			event.begin();
+			if (environment == null) {
+				exitCode = executor.execute(cmdLine);
+			} else {
+				Map<String, String> env = new HashMap<String, String>(System.getenv());
+				env.putAll(environment);
+				exitCode = executor.execute(cmdLine, env);
+			}
+			// A destroyed process may exit normally (e.g. a SIGTERM handler that exits with 0)
+			this.checkDestroyed(executor, command, log, null);
+		} catch (ExecuteException e) {
+			exitCode = e.getExitValue();
+			this.checkDestroyed(executor, command, log, e);
+			throw new MojoFailureException(this.name + " failure", e);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error executing " + this.name, e);
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.command = command.toString();
+				event.pid = executor == null ? -1 : executor.pid;
+				event.exitCode = exitCode;
+				event.commit();
+			}
+			if (log instanceof AsyncLog) {
+				((AsyncLog) log).close();
+			}
+			if (trace != null) {
+				trace.end(this.mojo.module(), command.toString(), exitCode);
+			}
+			if (metrics != null) {
+				metrics.stopped(exitCode);
+				this.mojo.writeMetrics(metrics);
+			}
+		}
+	}
+
+	/**
+	 * Fail if the process tree was destroyed (timeout, hang, cancellation), whatever its exit code.
+	 * @param executor the executor of the process
+	 * @param command  the command line, for the log
+	 * @param log      the log
+	 * @param cause    the execution error. Can be null.
+	 * @throws MojoFailureException the process was destroyed
+	 */
+	private void checkDestroyed(Executor executor, CommandLine command, Log log, ExecuteException cause) throws MojoFailureException {
+		String reason = executor.process == null ? null : executor.process.reason();
+		if (reason != null) {
+			log.error(this.name + " " + reason + " : [" + command + "] and its child processes were terminated");
+			throw new MojoFailureException(this.name + " " + reason, cause);
+		}
+	}
+
+	/**
+	 * Start a command line (e.g. a dev server) and return as soon as it is launched. 
+	 * Its output is written to the maven log until it exits.
+	 * <br>
+	 * The process tree is destroyed by a shutdown hook if it is still running when maven exits.
+	 * @param cmdLine      the command line
+	 * @param workingDir   the working directory
+	 * @param readyPattern the pattern of the output line to notify 'ready' of. Can be null.
+	 * @param ready        the listener of the first line that matches 'readyPattern'
+	 * @param result       the handler of the process exit
+	 * @return the launched process
+	 * @throws MojoExecutionException the command could not be launched
+	 */
+	ProcessTree start(CommandLine cmdLine, File workingDir, Pattern readyPattern, Runnable ready, DefaultExecuteResultHandler result) 
+		throws MojoExecutionException {
+		
+		Executor executor = new Executor(cmdLine.toString(), this.mojo.inheritIO() && ! this.mojo.useLogHandler(), null);
+		if (this.mojo.useLogHandler()) {
+			Log log = this.mojo.getLog();
+			LogHandler stdOut = new LogHandler.StdOut(log, this.mojo.logLevel(), this.prefixes).command(cmdLine.toString());
+			LogHandler stdErr = new LogHandler.StdErr(log, this.mojo.logLevel(), this.prefixes).command(cmdLine.toString());
+			if (readyPattern != null) {
+				stdOut.match(readyPattern, ready);
+				stdErr.match(readyPattern, ready);
+			}
+			executor.setStreamHandler(new PumpStreamHandler(stdOut, stdErr));
+		}
+		executor.setWorkingDirectory(workingDir);
+		executor.setProcessDestroyer(new ShutdownHookProcessDestroyer());
+
+		try {
+			executor.execute(cmdLine, result);
+			// The process is launched by the executor thread
+			while (executor.process == null && ! result.hasResult()) {
+				Thread.sleep(10);
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error starting " + this.name, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while starting " + this.name, e);
+		}
+
+		if (executor.process == null) {
+			throw new MojoExecutionException("Error starting " + this.name, result.getException());
+		}
+		return executor.process;
+	}
+
+	/**
+	 * An executor that records the process start latency, starts the execution metrics sampling
+	 * and emits the {@link FlightEvents.Spawn} JFR event.
+	 * <br>
+	 * The launched process is a {@link ProcessTree} : when the executor destroys it (interruption, shutdown hook, timeout),
+	 * its descendants are terminated too.
+	 * <br>
+	 * If 'inheritIO', the process is launched with inherited standard streams ({@link ProcessBuilder#inheritIO()}).
+	 * There is no stream to pump : no pump thread, no copy in the JVM.
+	 */
+	private static class Executor extends DefaultExecutor {
+		private final String command;
+		private final boolean inheritIO;
+		private final ExecutionMetrics metrics;
+		private volatile long pid = -1;
+		private volatile ProcessTree process;
+		private long timeout;
+		private long hangTimeout;
+		private LogHandler[] outputs = new LogHandler[0];
+
+		private Executor(String command, boolean inheritIO, ExecutionMetrics metrics) {
+			this.command = command;
+			this.inheritIO = inheritIO;
+			this.metrics = metrics;
+			if (inheritIO) {
+				this.setStreamHandler(new NoStreamHandler());
+			}
+		}
+
+		/**
+		 * Set the timeouts of the process to launch.
+		 * @see ProcessTree#watch(long, long, LogHandler...)
+		 */
+		private void watch(long timeout, long hangTimeout, LogHandler... outputs) {
+			this.timeout = timeout;
+			this.hangTimeout = hangTimeout;
+			this.outputs = outputs;
+		}
+
+		@Override
+		protected Process launch(CommandLine command, Map<String, String> env, File dir) throws IOException {
+			FlightEvents.Spawn event = new FlightEvents.Spawn();
+			event.begin();
+			long start = System.nanoTime();
+			Process process;
+			if (this.inheritIO) {
+				ProcessBuilder builder = new ProcessBuilder(command.toStrings()).directory(dir).inheritIO();
+				if (env != null) {
+					builder.environment().clear();
+					builder.environment().putAll(env);
+				}
+				process = builder.start();
+			} else {
+				process = super.launch(command, env, dir);
+			}
+
+			long latency = System.nanoTime() - start;
+			event.end();
+			this.pid = process.pid();
+			if (event.shouldCommit()) {
+				event.command = this.command;
+				event.pid = this.pid;
+				event.commit();
+			}
+
+			if (this.metrics != null) {
+				this.metrics.started(process, latency);
+			}
+			this.process = new ProcessTree(process).watch(this.timeout, this.hangTimeout, this.outputs);
+			return this.process;
+		}
+	}
+
+	/** A stream handler for a process whose streams are not piped to the JVM. */
+	private static class NoStreamHandler implements ExecuteStreamHandler {
+		public void setProcessInputStream(OutputStream os) {}
+
+		public void setProcessErrorStream(InputStream is) {}
+
+		public void setProcessOutputStream(InputStream is) {}
+
+		public void start() {}
+
+		public void stop() {}
+	}
+}
@@ -0,0 +1,479 @@
+package com.github.ug_dbg;
+
+import com.github.ug_dbg.json.JSONArray;
+import com.github.ug_dbg.json.JSONException;
+import com.github.ug_dbg.json.JSONObject;
+import com.github.ug_dbg.json.JSONTokener;
+import com.github.ug_dbg.json.JSONWriter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merge Istanbul coverage files (coverage-final.json) without loading whole documents.
+ * <br>
+ * A coverage file is an object whose keys are the source file paths and whose values are the file coverage entries.
+ * <ol>
+ *     <li>Index : each input is streamed once, entry by entry, to record the byte range of each entry.</li>
+ *     <li>Merge : for each source file, its entries are read back from their byte range, summed and written out.</li>
+ * </ol>
+ * At most one source file entry of each input is in memory at a time, whatever the size of the inputs.
+ * <br>
+ * The statement ('s'), function ('f') and branch ('b') hit counts are summed. The maps are those of the first input.
+ */
+class CoverageMerge {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String[] METRICS = {"lines", "statements", "functions", "branches"};
+
+	private final List<File> inputs;
+
+	/** The byte ranges of each source file entry in the inputs : [input index, start, end]. */
+	private final Map<String, List<long[]>> index = new LinkedHashMap<String, List<long[]>>();
+
+	/** The summary of each source file : covered/total for each of the {@link #METRICS}. */
+	private final Map<String, long[]> summaries = new LinkedHashMap<String, long[]>();
+
+	/**
+	 * Create a coverage merge.
+	 * @param inputs the coverage files to merge
+	 */
+	CoverageMerge(List<File> inputs) {
+		this.inputs = inputs;
+	}
+
+	/**
+	 * Merge the inputs into a coverage file and write the coverage summary (coverage-summary.json format).
+	 * @param output  the merged coverage file
+	 * @param summary the coverage summary file. Can be null.
+	 * @return the total coverage : covered/total for lines, statements, functions, branches
+	 * @throws MojoExecutionException error reading an input or writing an output
+	 */
+	long[] merge(File output, File summary) throws MojoExecutionException {
+		for (int i = 0; i < this.inputs.size(); i++) {
+			this.index(i);
+		}
+
+		List<FileChannel> channels = new ArrayList<FileChannel>();
+		Writer writer = null;
+		try {
+			for (File input : this.inputs) {
+				channels.add(FileChannel.open(input.toPath(), StandardOpenOption.READ));
+			}
+			FileUtils.forceMkdirParent(output);
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), UTF8));
+			writer.write('{');
+			boolean first = true;
+			for (Map.Entry<String, List<long[]>> entry : this.index.entrySet()) {
+				JSONObject merged = null;
+				for (long[] range : entry.getValue()) {
+					JSONObject coverage = read(channels.get((int) range[0]), range[1], range[2]);
+					merged = merged == null ? coverage : add(merged, coverage);
+				}
+				this.summaries.put(entry.getKey(), summarize(merged));
+
+				writer.write(first ? "\n" : ",\n");
+				writer.write(JSONObject.quote(entry.getKey()));
+				writer.write(':');
+				merged.write(writer);
+				first = false;
+			}
+			writer.write("\n}\n");
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error writing the merged coverage [" + output + "]", e);
+		} catch (JSONException e) {
+			throw new MojoExecutionException("Invalid coverage entry", e);
+		} finally {
+			closeQuietly(writer);
+			for (FileChannel channel : channels) {
+				closeQuietly(channel);
+			}
+		}
+
+		long[] total = new long[METRICS.length * 2];
+		for (long[] fileSummary : this.summaries.values()) {
+			for (int i = 0; i < total.length; i++) {
+				total[i] += fileSummary[i];
+			}
+		}
+		if (summary != null) {
+			this.writeSummary(summary, total);
+		}
+		return total;
+	}
+
+	/**
+	 * The number of source files in the merged coverage.
+	 * @return the source file count, once merged
+	 */
+	int files() {
+		return this.summaries.size();
+	}
+
+	/**
+	 * Format a coverage metric.
+	 * @param total the total coverage, from {@link #merge(File, File)}
+	 * @return e.g. 'lines 80.00% (40/50), statements ...'
+	 */
+	static String describe(long[] total) {
+		StringBuilder description = new StringBuilder();
+		for (int i = 0; i < METRICS.length; i++) {
+			description.append(i == 0 ? "" : ", ").append(METRICS[i]).append(" ");
+			description.append(String.format("%.2f", pct(total[2 * i], total[2 * i + 1]))).append("% ");
+			description.append("(").append(total[2 * i]).append("/").append(total[2 * i + 1]).append(")");
+		}
+		return description.toString();
+	}
+
+	/**
+	 * Stream an input, entry by entry, and record the byte range of each entry.
+	 * @param input the input index
+	 * @throws MojoExecutionException the input could not be read or is not a coverage object
+	 */
+	private void index(int input) throws MojoExecutionException {
+		File file = this.inputs.get(input);
+		CountingReader reader = null;
+		try {
+			reader = new CountingReader(new BufferedInputStream(new FileInputStream(file)));
+			JSONTokener tokener = new JSONTokener(reader);
+			if (tokener.nextClean() != '{') {
+				throw tokener.syntaxError("A coverage file must begin with '{'");
+			}
+			char c = tokener.nextClean();
+			while (c != '}') {
+				if (c != '"') {
+					throw tokener.syntaxError("Expected a source file path");
+				}
+				String path = tokener.nextString('"');
+				if (tokener.nextClean() != ':') {
+					throw tokener.syntaxError("Expected a ':' after a source file path");
+				}
+				long start = reader.bytes();
+				// Parse (and forget) the entry to find its end
+				if (! (tokener.nextValue() instanceof JSONObject)) {
+					throw tokener.syntaxError("Expected a coverage entry for [" + path + "]");
+				}
+				long end = reader.bytes();
+
+				List<long[]> ranges = this.index.get(path);
+				if (ranges == null) {
+					ranges = new ArrayList<long[]>();
+					this.index.put(path, ranges);
+				}
+				ranges.add(new long[] {input, start, end});
+
+				c = tokener.nextClean();
+				if (c == ',') {
+					c = tokener.nextClean();
+				} else if (c != '}') {
+					throw tokener.syntaxError("Expected a ',' or '}'");
+				}
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error reading the coverage file [" + file + "]", e);
+		} catch (JSONException e) {
+			throw new MojoExecutionException("Invalid coverage file [" + file + "]", e);
+		} finally {
+			closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Read a coverage entry back from its byte range.
+	 * @param channel the input file channel
+	 * @param start   the entry start offset
+	 * @param end     the entry end offset
+	 * @return the coverage entry
+	 * @throws IOException error reading the input
+	 */
+	private static JSONObject read(FileChannel channel, long start, long end) throws IOException {
+		channel.position(start);
+		InputStream stream = new BoundedInputStream(Channels.newInputStream(channel), end - start);
+		return new JSONObject(new JSONTokener(new BufferedReader(new InputStreamReader(stream, UTF8))));
+	}
+
+	/**
+	 * Add the hit counts of a coverage entry to another.
+	 * @param merged   the entry to add to
+	 * @param coverage the entry to add
+	 * @return the merged entry
+	 */
+	static JSONObject add(JSONObject merged, JSONObject coverage) {
+		for (String counter : new String[] {"s", "f"}) {
+			JSONObject to = merged.optJSONObject(counter);
+			JSONObject from = coverage.optJSONObject(counter);
+			if (to == null || from == null) {
+				continue;
+			}
+			for (String id : from.keySet()) {
+				to.put(id, to.optLong(id) + from.optLong(id));
+			}
+		}
+
+		JSONObject to = merged.optJSONObject("b");
+		JSONObject from = coverage.optJSONObject("b");
+		if (to != null && from != null) {
+			for (String id : from.keySet()) {
+				JSONArray toHits = to.optJSONArray(id);
+				JSONArray fromHits = from.optJSONArray(id);
+				if (toHits == null) {
+					to.put(id, fromHits);
+					continue;
+				}
+				for (int i = 0; fromHits != null && i < fromHits.length(); i++) {
+					toHits.put(i, toHits.optLong(i) + fromHits.optLong(i));
+				}
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Summarize a coverage entry.
+	 * @param coverage the source file coverage entry
+	 * @return covered/total for lines, statements, functions, branches
+	 */
+	static long[] summarize(JSONObject coverage) {
+		long[] summary = new long[METRICS.length * 2];
+
+		JSONObject statements = coverage.optJSONObject("s");
+		JSONObject statementMap = coverage.optJSONObject("statementMap");
+		Set<Integer> lines = new HashSet<Integer>();
+		Set<Integer> coveredLines = new HashSet<Integer>();
+		if (statements != null) {
+			for (String id : statements.keySet()) {
+				boolean covered = statements.optLong(id) > 0;
+				summary[2] += covered ? 1 : 0;
+				summary[3]++;
+
+				JSONObject location = statementMap == null ? null : statementMap.optJSONObject(id);
+				JSONObject start = location == null ? null : location.optJSONObject("start");
+				if (start != null) {
+					int line = start.optInt("line");
+					lines.add(line);
+					if (covered) {
+						coveredLines.add(line);
+					}
+				}
+			}
+		}
+		summary[0] = coveredLines.size();
+		summary[1] = lines.size();
+
+		JSONObject functions = coverage.optJSONObject("f");
+		if (functions != null) {
+			for (String id : functions.keySet()) {
+				summary[4] += functions.optLong(id) > 0 ? 1 : 0;
+				summary[5]++;
+			}
+		}
+
+		JSONObject branches = coverage.optJSONObject("b");
+		if (branches != null) {
+			for (String id : branches.keySet()) {
+				JSONArray hits = branches.optJSONArray(id);
+				for (int i = 0; hits != null && i < hits.length(); i++) {
+					summary[6] += hits.optLong(i) > 0 ? 1 : 0;
+					summary[7]++;
+				}
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * Write the coverage summary, in the Istanbul 'json-summary' format : the total, then each source file.
+	 */
+	private void writeSummary(File file, long[] total) throws MojoExecutionException {
+		Writer writer = null;
+		try {
+			FileUtils.forceMkdirParent(file);
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8));
+			JSONWriter json = new JSONWriter(writer).object();
+			summary(json.key("total"), total);
+			for (Map.Entry<String, long[]> entry : this.summaries.entrySet()) {
+				summary(json.key(entry.getKey()), entry.getValue());
+			}
+			json.endObject();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error writing the coverage summary [" + file + "]", e);
+		} finally {
+			closeQuietly(writer);
+		}
+	}
+
+	private static void summary(JSONWriter json, long[] summary) {
+		json.object();
+		for (int i = 0; i < METRICS.length; i++) {
+			long covered = summary[2 * i];
+			long total = summary[2 * i + 1];
+			json.key(METRICS[i]).object()
+				.key("total").value(total)
+				.key("covered").value(covered)
+				.key("skipped").value(0)
+				.key("pct").value(Math.round(pct(covered, total) * 100) / 100.0)
+				.endObject();
+		}
+		json.endObject();
+	}
+
+	private static double pct(long covered, long total) {
+		return total == 0 ? 100 : 100.0 * covered / total;
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	/**
+	 * A UTF-8 reader that counts the bytes it consumed, so the tokener position can be mapped to a byte offset.
+	 * It does not read ahead. {@link #mark(int)}/{@link #reset()} support a single character, as the tokener needs.
+	 */
+	private static class CountingReader extends Reader {
+		private final InputStream in;
+		private long bytes;
+
+		/** The low surrogate of a supplementary character, to return on the next read. */
+		private int lowSurrogate = -1;
+
+		private boolean marked;
+		private int lastChar = -1;
+		private int lastBytes;
+		private int pushback = -1;
+		private int pushbackBytes;
+
+		private CountingReader(InputStream in) {
+			this.in = in;
+		}
+
+		private long bytes() {
+			return this.bytes;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int c;
+			int count;
+			if (this.pushback >= 0) {
+				c = this.pushback;
+				count = this.pushbackBytes;
+				this.pushback = -1;
+				this.bytes += count;
+			} else {
+				long before = this.bytes;
+				c = this.decode();
+				count = (int) (this.bytes - before);
+			}
+			if (this.marked) {
+				this.lastChar = c;
+				this.lastBytes = count;
+			}
+			return c;
+		}
+
+		private int decode() throws IOException {
+			if (this.lowSurrogate >= 0) {
+				int c = this.lowSurrogate;
+				this.lowSurrogate = -1;
+				return c;
+			}
+
+			int b = this.in.read();
+			if (b < 0) {
+				return -1;
+			}
+			this.bytes++;
+			if (b < 0x80) {
+				return b;
+			}
+
+			int continuation = b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : 1;
+			int codePoint = b & (0x3F >> continuation);
+			for (int i = 0; i < continuation; i++) {
+				int next = this.in.read();
+				if (next < 0) {
+					return 0xFFFD;
+				}
+				this.bytes++;
+				codePoint = (codePoint << 6) | (next & 0x3F);
+			}
+			if (codePoint >= 0x10000) {
+				this.lowSurrogate = Character.lowSurrogate(codePoint);
+				return Character.highSurrogate(codePoint);
+			}
+			return codePoint;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			int c = this.read();
+			if (c < 0) {
+				return -1;
+			}
+			buffer[offset] = (char) c;
+			return 1;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public void mark(int readAheadLimit) {
+			this.marked = true;
+			this.lastChar = -1;
+		}
+
+		@Override
+		public void reset() throws IOException {
+			if (! this.marked) {
+				throw new IOException("Reader not marked");
+			}
+			this.marked = false;
+			if (this.lastChar >= 0) {
+				this.pushback = this.lastChar;
+				this.pushbackBytes = this.lastBytes;
+				this.bytes -= this.lastBytes;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.github.ug_dbg;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Goal which merges the Istanbul coverage files (coverage-final.json) of several test runs (e.g. 'exec-shards')
+ * into a single coverage file and a coverage summary.
+ * <br>
+ * The coverage files are streamed : see {@link CoverageMerge}.
+ */
+@Mojo(name = "coverage-merge", threadSafe = true, defaultPhase = LifecyclePhase.VERIFY)
+public class CoverageMojo extends AbstractMojo {
+
+	/** The working directory. Optional. If not specified, basedir will be used. */
+	@Parameter(property = "npm.workingDir", defaultValue = "${basedir}")
+	private File workingDir;
+
+	/** The glob patterns of the coverage files to merge, relative to the working directory. Default is '**&#47;coverage-final.json'. */
+	@Parameter(property = "npm.coveragePatterns", defaultValue = "**/coverage-final.json")
+	private String[] coveragePatterns;
+
+	/** The merged coverage file. */
+	@Parameter(property = "npm.coverageFile", defaultValue = "${project.build.directory}/coverage/coverage-final.json")
+	private File coverageFile;
+
+	/** The coverage summary file (Istanbul 'json-summary' format). */
+	@Parameter(property = "npm.coverageSummary", defaultValue = "${project.build.directory}/coverage/coverage-summary.json")
+	private File coverageSummary;
+
+	public void execute() throws MojoExecutionException {
+		List<File> inputs = this.coverageFiles();
+		if (inputs.isEmpty()) {
+			this.getLog().warn("No coverage file matches " + Arrays.toString(this.coveragePatterns) + " in [" + this.workingDir + "]");
+			return;
+		}
+
+		this.getLog().info("Merging [" + inputs.size() + "] coverage file(s) into [" + this.coverageFile + "]");
+		for (File input : inputs) {
+			this.getLog().debug("Coverage file [" + input + "]");
+		}
+		CoverageMerge merge = new CoverageMerge(inputs);
+		long[] total = merge.merge(this.coverageFile, this.coverageSummary);
+		this.getLog().info("Coverage of [" + merge.files() + "] file(s) : " + CoverageMerge.describe(total));
+	}
+
+	/**
+	 * The coverage files to merge : node_modules and the merged coverage file itself are excluded.
+	 */
+	private List<File> coverageFiles() {
+		DirectoryScanner scanner = new DirectoryScanner();
+		scanner.setBasedir(this.workingDir);
+		scanner.setIncludes(this.coveragePatterns);
+		scanner.setExcludes(new String[] {"**/node_modules/**"});
+		scanner.scan();
+
+		List<File> files = new ArrayList<File>();
+		for (String file : scanner.getIncludedFiles()) {
+			File input = new File(this.workingDir, file);
+			if (! input.getAbsoluteFile().equals(this.coverageFile.getAbsoluteFile())) {
+				files.add(input);
+			}
+		}
+		return files;
+	}
+}
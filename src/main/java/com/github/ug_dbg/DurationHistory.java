@@ -0,0 +1,116 @@
+package com.github.ug_dbg;
+
+import com.github.ug_dbg.json.JSONException;
+import com.github.ug_dbg.json.JSONObject;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The duration history of the tasks, persisted in a JSON file (e.g. target/.npm-history.json).
+ * <br>
+ * Each entry is the exponential moving average of the successful durations of a task, in milliseconds,
+ * so a single slow (or fast) run does not reorder the tasks for good.
+ * <br>
+ * {@link #save()} merges the recorded durations into the current file content :
+ * several modules can share a history file.
+ */
+class DurationHistory {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The weight of a new duration in the moving average. */
+	private static final double ALPHA = 0.5;
+
+	/** The history file can be shared by several executions of a parallel build. */
+	private static final Object FILE_LOCK = new Object();
+
+	private final File file;
+	private final Log log;
+	private final Map<String, Long> durations = new HashMap<String, Long>();
+	private final Map<String, Long> recorded = new HashMap<String, Long>();
+
+	/**
+	 * Load a duration history.
+	 * @param file the history file. If it does not exist, the history is empty.
+	 * @param log  the maven logger
+	 */
+	DurationHistory(File file, Log log) {
+		this.file = file;
+		this.log = log;
+		synchronized (FILE_LOCK) {
+			this.durations.putAll(this.read());
+		}
+	}
+
+	/**
+	 * The expected duration of a task.
+	 * @param key the task key
+	 * @return the expected duration in milliseconds, null if the task has no history
+	 */
+	synchronized Long expected(String key) {
+		return this.durations.get(key);
+	}
+
+	/**
+	 * Record the duration of a successful run of a task. Call {@link #save()} to persist it.
+	 * @param key      the task key
+	 * @param duration the duration in milliseconds
+	 */
+	synchronized void record(String key, long duration) {
+		this.recorded.put(key, duration);
+	}
+
+	/**
+	 * Merge the recorded durations into the history file. Errors are logged.
+	 */
+	void save() {
+		synchronized (FILE_LOCK) {
+			Map<String, Long> current = this.read();
+			synchronized (this) {
+				for (Map.Entry<String, Long> entry : this.recorded.entrySet()) {
+					Long previous = current.get(entry.getKey());
+					long duration = previous == null
+						? entry.getValue()
+						: Math.round(ALPHA * entry.getValue() + (1 - ALPHA) * previous);
+					current.put(entry.getKey(), duration);
+				}
+				this.recorded.clear();
+				this.durations.putAll(current);
+			}
+
+			JSONObject json = new JSONObject();
+			for (Map.Entry<String, Long> entry : current.entrySet()) {
+				json.put(entry.getKey(), entry.getValue());
+			}
+			try {
+				FileUtils.forceMkdirParent(this.file);
+				FileUtils.writeStringToFile(this.file, json.toString(1, " "), UTF8);
+			} catch (IOException e) {
+				this.log.warn("Could not write the duration history [" + this.file + "]", e);
+			}
+		}
+	}
+
+	private Map<String, Long> read() {
+		Map<String, Long> durations = new HashMap<String, Long>();
+		if (! this.file.isFile()) {
+			return durations;
+		}
+		try {
+			JSONObject json = new JSONObject(FileUtils.readFileToString(this.file, UTF8));
+			for (String key : json.keySet()) {
+				durations.put(key, json.getLong(key));
+			}
+		} catch (IOException e) {
+			this.log.warn("Could not read the duration history [" + this.file + "]", e);
+		} catch (JSONException e) {
+			this.log.warn("Invalid duration history [" + this.file + "]. It will be overwritten.", e);
+		}
+		return durations;
+	}
+}
@@ -0,0 +1,260 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.lifecycle.LifecycleExecutor;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.BuildPluginManager;
+import org.apache.maven.plugin.MavenPluginManager;
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A maven extension that starts the npm installs of the reactor as soon as the projects are read,
+ * in parallel, instead of waiting for each module turn.
+ * <br>
+ * Enable it by declaring the plugin with &lt;extensions&gt;true&lt;/extensions&gt;. Disable it with -Dnpm.earlyInstall=false.
+ * <br>
+ * The 'exec' executions of the build execution plan (i.e. the session goals reach their phase)
+ * with an install command ('install', 'i', 'ci', 'clean-install') are configured as maven does,
+ * and started early (see {@link NpmMojo#startEarly(Semaphore, Set)}), unless :
+ * <ul>
+ *     <li>they declare 'inputs' (incremental executions) or run in the 'background'</li>
+ *     <li>they 'skipIfUpToDate' and the node modules are up-to-date</li>
+ *     <li>a 'clean' execution of the build deletes their node modules or package-lock (e.g. 'mvn clean install')</li>
+ *     <li>a 'version' execution of the build rewrites their package.json</li>
+ * </ul>
+ * The 'exec' goal then waits for the already running install, writes its log and propagates its failure
+ * (see {@link #take(File, CommandLine)}).
+ */
+@Named("npm-early-install")
+@Singleton
+public class EarlyInstallParticipant extends AbstractMavenLifecycleParticipant {
+
+	private static final String GROUP_ID    = "com.github.ug-dbg";
+	private static final String ARTIFACT_ID = "mvn-npm-plugin";
+
+	/** The key prefix of the early installs, in the {@link BackgroundExecutions}. */
+	private static final String KEY = "early-install:";
+
+	/** The goals whose executions are configured : the installs, and what deletes or rewrites their inputs. */
+	private static final List<String> GOALS = Arrays.asList("exec", "clean", "version");
+
+	private final LifecycleExecutor lifecycleExecutor;
+	private final BuildPluginManager buildPluginManager;
+	private final MavenPluginManager mavenPluginManager;
+	private final Log log;
+
+	/** The configured mojos of the early installs, to release at the end of the session. */
+	private final List<Configured> started = new ArrayList<Configured>();
+
+	@Inject
+	public EarlyInstallParticipant(
+		LifecycleExecutor lifecycleExecutor,
+		BuildPluginManager buildPluginManager,
+		MavenPluginManager mavenPluginManager,
+		Logger logger) {
+
+		this.lifecycleExecutor = lifecycleExecutor;
+		this.buildPluginManager = buildPluginManager;
+		this.mavenPluginManager = mavenPluginManager;
+		this.log = new DefaultLog(logger);
+	}
+
+	@Override
+	public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
+		Properties properties = new Properties();
+		properties.putAll(session.getSystemProperties());
+		properties.putAll(session.getUserProperties());
+		if (! Boolean.parseBoolean(properties.getProperty("npm.earlyInstall", "true"))) {
+			return;
+		}
+		Semaphore slots = new Semaphore(threads(properties.getProperty("npm.earlyInstallThreads")));
+
+		List<Configured> installs = new ArrayList<Configured>();
+		Set<File> modified = new HashSet<File>();
+		MavenProject currentProject = session.getCurrentProject();
+		try {
+			for (MavenProject project : session.getProjects()) {
+				if (project.getPlugin(GROUP_ID + ":" + ARTIFACT_ID) != null) {
+					this.configure(session, project, installs, modified);
+				}
+			}
+		} finally {
+			session.setCurrentProject(currentProject);
+		}
+
+		for (Configured install : installs) {
+			if (this.start(install, slots, modified)) {
+				synchronized (this.started) {
+					this.started.add(install);
+				}
+			} else {
+				install.release();
+			}
+		}
+	}
+
+	@Override
+	public void afterSessionEnd(MavenSession session) {
+		synchronized (this.started) {
+			for (Configured install : this.started) {
+				install.release();
+			}
+			this.started.clear();
+		}
+	}
+
+	/**
+	 * Take the early install of a command line, if any.
+	 * @param workingDir the command working directory
+	 * @param cmdLine    the command line
+	 * @return the early install to await, null if the command was not started early
+	 */
+	static BackgroundExecutions take(File workingDir, CommandLine cmdLine) {
+		List<BackgroundExecutions> installs = BackgroundExecutions.take(key(workingDir, cmdLine));
+		return installs.isEmpty() ? null : installs.get(0);
+	}
+
+	/**
+	 * Read the max number of concurrent early installs.
+	 * @param value the 'npm.earlyInstallThreads' property. Can be null.
+	 * @return the number of threads, the number of available processors if not set or &lt; 1
+	 * @throws MavenExecutionException the property is not a number
+	 */
+	private static int threads(String value) throws MavenExecutionException {
+		int threads = 0;
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				threads = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				throw new MavenExecutionException("Invalid 'npm.earlyInstallThreads' [" + value + "] : a number of threads is expected", e);
+			}
+		}
+		return threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+	}
+
+	/**
+	 * Configure the 'exec', 'clean' and 'version' executions of this plugin in the execution plan of a project.
+	 * A project whose plan cannot be computed or configured is ignored : the build reports the error in its turn.
+	 * @param session  the maven session
+	 * @param project  the project
+	 * @param installs the configured 'exec' executions, to add to
+	 * @param modified the files and directories deleted by the 'clean' executions or rewritten by the 'version' executions, to add to
+	 */
+	private void configure(MavenSession session, MavenProject project, List<Configured> installs, Set<File> modified) {
+		session.setCurrentProject(project);
+		List<MojoExecution> executions;
+		try {
+			executions = this.lifecycleExecutor.calculateExecutionPlan(session, true, goals(session)).getMojoExecutions();
+		} catch (Exception e) {
+			this.log.debug("Not starting the installs of [" + project.getArtifactId() + "] early : no execution plan", e);
+			return;
+		}
+
+		for (MojoExecution execution : executions) {
+			if (! GROUP_ID.equals(execution.getGroupId()) || ! ARTIFACT_ID.equals(execution.getArtifactId())) {
+				continue;
+			}
+			if (! GOALS.contains(execution.getGoal())) {
+				continue;
+			}
+
+			Mojo mojo;
+			try {
+				this.buildPluginManager.getPluginRealm(session, execution.getMojoDescriptor().getPluginDescriptor());
+				mojo = this.mavenPluginManager.getConfiguredMojo(Mojo.class, session, execution);
+			} catch (Exception e) {
+				this.log.debug("Not starting the installs of [" + project.getArtifactId() + "] early : [" + execution + "]", e);
+				continue;
+			}
+
+			Configured configured = new Configured(mojo, execution);
+			if (mojo instanceof CleanMojo) {
+				modified.addAll(((CleanMojo) mojo).deletedInstallFiles());
+				configured.release();
+			} else if (mojo instanceof VersionMojo) {
+				modified.add(((VersionMojo) mojo).updatedFile());
+				configured.release();
+			} else if (mojo instanceof NpmMojo) {
+				installs.add(configured);
+			} else {
+				// Another class realm : not an extension of this build
+				configured.release();
+			}
+		}
+	}
+
+	/**
+	 * Start an 'exec' execution early, if it is an install that can be started early.
+	 * @return true if the install was started
+	 */
+	private boolean start(Configured install, Semaphore slots, Set<File> modified) {
+		try {
+			return ((NpmMojo) install.mojo).startEarly(slots, modified);
+		} catch (MojoExecutionException e) {
+			this.log.debug("Not starting [" + install.execution + "] early", e);
+			return false;
+		}
+	}
+
+	/**
+	 * The session goals, or the default goal of the top level project (as maven does).
+	 */
+	private static String[] goals(MavenSession session) {
+		List<String> goals = session.getGoals();
+		if (goals.isEmpty() && session.getTopLevelProject() != null && session.getTopLevelProject().getDefaultGoal() != null) {
+			return StringUtils.split(session.getTopLevelProject().getDefaultGoal());
+		}
+		return goals.toArray(new String[goals.size()]);
+	}
+
+	/**
+	 * The key of an early install, in the {@link BackgroundExecutions}.
+	 * @param workingDir the command working directory
+	 * @param cmdLine    the command line
+	 * @return the early install key
+	 */
+	static String key(File workingDir, CommandLine cmdLine) {
+		try {
+			return KEY + workingDir.getCanonicalPath() + ":" + cmdLine;
+		} catch (IOException e) {
+			return KEY + workingDir.getAbsolutePath() + ":" + cmdLine;
+		}
+	}
+
+	/** A mojo configured for an execution of the plan, to release once done. */
+	private class Configured {
+		private final Mojo mojo;
+		private final MojoExecution execution;
+
+		private Configured(Mojo mojo, MojoExecution execution) {
+			this.mojo = mojo;
+			this.execution = execution;
+		}
+
+		private void release() {
+			EarlyInstallParticipant.this.mavenPluginManager.releaseMojo(this.mojo, this.execution);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolve the executables of a working directory (e.g. 'ng') to absolute paths, looking in order in :
+ * <ol>
+ *     <li>the 'node_modules/.bin' directory of the working directory, then of its ancestors</li>
+ *     <li>the npm home directory, if any</li>
+ *     <li>the PATH</li>
+ * </ol>
+ * The resolved paths are cached for the life of the JVM, per working directory :
+ * the executions of a reactor do not scan the PATH again. A cached executable that was deleted is resolved again,
+ * and so is one that a nearer 'node_modules/.bin' executable now overrides (e.g. once an 'npm install' of the build ran).
+ * <br>
+ * On Windows, the '.exe', '.cmd' and '.bat' extensions are tried, in this order.
+ */
+class Executables {
+	private static final String[] WINDOWS_EXTENSIONS = {".exe", ".cmd", ".bat"};
+
+	/** The resolved executables, by working directory, npm home and name. */
+	private static final Map<String, File> CACHE = new ConcurrentHashMap<String, File>();
+
+	private Executables() {}
+
+	/**
+	 * Resolve an executable.
+	 * @param name       the executable name (e.g. 'ng')
+	 * @param workingDir the working directory
+	 * @param npmHome    the directory that contains npm. Can be null.
+	 * @return the absolute executable file, null if not found
+	 */
+	static File resolve(String name, File workingDir, File npmHome) {
+		String key = canonical(workingDir) + File.pathSeparator + (npmHome == null ? "" : canonical(npmHome)) + File.pathSeparator + name;
+		File cached = CACHE.get(key);
+		if (cached != null && cached.isFile()) {
+			// An install may have created a nearer node_modules/.bin executable since
+			File nearer = find(name, binDirectories(workingDir, cached.getParentFile()));
+			if (nearer == null) {
+				return cached;
+			}
+			CACHE.put(key, nearer);
+			return nearer;
+		}
+
+		File executable = find(name, directories(workingDir, npmHome));
+		if (executable != null) {
+			CACHE.put(key, executable);
+		}
+		return executable;
+	}
+
+	/**
+	 * The command line of an executable : the executable itself, or 'cmd /c executable' for a Windows script.
+	 * @param executable the absolute executable file
+	 * @return a new command line
+	 */
+	static CommandLine commandLine(File executable) {
+		String path = executable.getAbsolutePath();
+		String lowerCase = path.toLowerCase();
+		if (AbstractMojo.isWindows() && (lowerCase.endsWith(".cmd") || lowerCase.endsWith(".bat"))) {
+			CommandLine cmd = new CommandLine("cmd");
+			cmd.addArgument("/c");
+			cmd.addArgument(path);
+			return cmd;
+		}
+		return new CommandLine(path);
+	}
+
+	/**
+	 * The directories to look into, in order.
+	 */
+	private static List<File> directories(File workingDir, File npmHome) {
+		List<File> directories = binDirectories(workingDir, null);
+		if (npmHome != null) {
+			directories.add(npmHome);
+		}
+
+		String path = System.getenv("PATH");
+		if (path == null) {
+			path = System.getenv("Path");
+		}
+		if (path != null) {
+			for (String dir : StringUtils.split(path, File.pathSeparator)) {
+				directories.add(new File(dir));
+			}
+		}
+		return directories;
+	}
+
+	/**
+	 * The 'node_modules/.bin' directories of a working directory and of its ancestors, in order.
+	 * @param workingDir the working directory
+	 * @param until      the directory to stop at (excluded), e.g. the directory of a cached executable. Can be null.
+	 */
+	private static List<File> binDirectories(File workingDir, File until) {
+		List<File> directories = new ArrayList<File>();
+		for (File dir = workingDir.getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+			File bin = new File(new File(dir, "node_modules"), ".bin");
+			if (bin.equals(until)) {
+				break;
+			}
+			directories.add(bin);
+		}
+		return directories;
+	}
+
+	private static File find(String name, List<File> directories) {
+		for (File dir : directories) {
+			if (! dir.isDirectory()) {
+				continue;
+			}
+			if (AbstractMojo.isWindows()) {
+				for (String extension : WINDOWS_EXTENSIONS) {
+					File executable = new File(dir, name + extension);
+					if (executable.isFile()) {
+						return executable.getAbsoluteFile();
+					}
+				}
+			} else {
+				File executable = new File(dir, name);
+				if (executable.isFile() && executable.canExecute()) {
+					return executable.getAbsoluteFile();
+				}
+			}
+		}
+		return null;
+	}
+
+	private static String canonical(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package com.github.ug_dbg;
+
+import com.github.ug_dbg.json.JSONObject;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The performance metrics of a process execution.
+ * <br>
+ * The process tree (the process and its descendants, e.g. npm → node) is sampled on a daemon thread :
+ * <ul>
+ *     <li>CPU time : the sum of the last sampled CPU time of each process of the tree</li>
+ *     <li>Peak RSS : the max of the sampled sum of the resident set sizes, from /proc/&lt;pid&gt;/status (Linux only)</li>
+ * </ul>
+ * A process that lives less than the sampling interval is not measured : these metrics are lower bounds.
+ * <br>
+ * The metrics are appended to a JSON lines file (e.g. target/npm-metrics.jsonl) with {@link #write(File)} :
+ * the file is not read nor rewritten, whatever the number of executions.
+ */
+class ExecutionMetrics {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Is /proc available, to read the resident set sizes ? */
+	private static final boolean PROC = new File("/proc/self/status").isFile();
+
+	/** The metrics file can be shared by several executions of a parallel goal. */
+	private static final Object FILE_LOCK = new Object();
+
+	private final String module;
+	private final String command;
+	private final File workingDir;
+	private final long samplingInterval;
+	private final Log log;
+
+	private final long startTime = System.currentTimeMillis();
+	private final long start = System.nanoTime();
+	private long wallTime = -1;
+	private long startLatency = -1;
+	private int exitCode = -1;
+
+	private final Map<Long, Long> cpuTimes = new HashMap<Long, Long>();
+	private volatile long peakRss = -1;
+	private Thread sampler;
+
+	private LogHandler stdOut;
+	private LogHandler stdErr;
+
+	/**
+	 * Start measuring an execution.
+	 * @param module           the maven module (artifactId)
+	 * @param command          the command line
+	 * @param workingDir       the working directory
+	 * @param samplingInterval the process tree sampling interval, in milliseconds
+	 * @param log              the maven logger
+	 */
+	ExecutionMetrics(String module, String command, File workingDir, long samplingInterval, Log log) {
+		this.module = module;
+		this.command = command;
+		this.workingDir = workingDir;
+		this.samplingInterval = samplingInterval;
+		this.log = log;
+	}
+
+	/**
+	 * Set the output handlers, to get the output line and byte counts.
+	 * @param stdOut the std.out handler
+	 * @param stdErr the std.err handler
+	 */
+	void setOutput(LogHandler stdOut, LogHandler stdErr) {
+		this.stdOut = stdOut;
+		this.stdErr = stdErr;
+	}
+
+	/**
+	 * The process has been started : record the start latency and start sampling.
+	 * @param process      the process
+	 * @param startLatency the time it took to start the process, in nanoseconds
+	 */
+	void started(final Process process, long startLatency) {
+		this.startLatency = startLatency;
+		this.sampler = new Thread(new Runnable() {
+			public void run() {
+				ExecutionMetrics.this.sample(process.toHandle());
+			}
+		}, "npm-metrics");
+		this.sampler.setDaemon(true);
+		this.sampler.start();
+	}
+
+	/**
+	 * The process exited (or could not be started) : stop sampling and record the wall time.
+	 * @param exitCode the process exit code
+	 */
+	void stopped(int exitCode) {
+		this.wallTime = System.nanoTime() - this.start;
+		this.exitCode = exitCode;
+		if (this.sampler != null) {
+			this.sampler.interrupt();
+			try {
+				this.sampler.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * The wall time of the execution.
+	 * @return the wall time in milliseconds, -1 if not {@link #stopped(int)}
+	 */
+	long wallTimeMillis() {
+		return this.wallTime < 0 ? -1 : this.wallTime / 1000000;
+	}
+
+	/**
+	 * The sum of the last sampled CPU time of each process of the tree.
+	 * @return the CPU time in milliseconds
+	 */
+	long cpuTimeMillis() {
+		synchronized (this.cpuTimes) {
+			long total = 0;
+			for (Long cpuTime : this.cpuTimes.values()) {
+				total += cpuTime;
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * The metrics as a JSON object.
+	 * @return a new JSON object
+	 */
+	JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		json.put("module", this.module);
+		json.put("command", this.command);
+		json.put("workingDir", this.workingDir.getAbsolutePath());
+		json.put("thread", Thread.currentThread().getName());
+		json.put("startTime", this.startTime);
+		json.put("exitCode", this.exitCode);
+		json.put("wallTimeMs", this.wallTimeMillis());
+		json.put("startLatencyMs", this.startLatency < 0 ? -1 : this.startLatency / 1000000.0);
+		json.put("cpuTimeMs", this.cpuTimeMillis());
+		json.put("peakRssKb", this.peakRss);
+		json.put("stdout", output(this.stdOut));
+		json.put("stderr", output(this.stdErr));
+		return json;
+	}
+
+	/**
+	 * Append the metrics to a JSON lines file : one JSON object per line, per execution. Errors are logged.
+	 * @param file the metrics file
+	 */
+	void write(File file) {
+		synchronized (FILE_LOCK) {
+			try {
+				FileUtils.forceMkdir(file.getParentFile());
+				FileUtils.writeStringToFile(file, this.toJSON().toString() + "\n", UTF8, true);
+			} catch (IOException e) {
+				this.log.warn("Could not write execution metrics to [" + file + "]", e);
+			}
+		}
+	}
+
+	private static JSONObject output(LogHandler handler) {
+		JSONObject json = new JSONObject();
+		json.put("lines", handler == null ? -1 : handler.lines());
+		json.put("bytes", handler == null ? -1 : handler.bytes());
+		return json;
+	}
+
+	/**
+	 * Sample the process tree until interrupted.
+	 * @param process the root process
+	 */
+	private void sample(ProcessHandle process) {
+		try {
+			while (process.isAlive()) {
+				long rss = this.sample(process, 0);
+				List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+				for (ProcessHandle descendant : descendants) {
+					rss = this.sample(descendant, rss);
+				}
+				if (rss >= 0 && rss > this.peakRss) {
+					this.peakRss = rss;
+				}
+				Thread.sleep(this.samplingInterval);
+			}
+		} catch (InterruptedException e) {
+			// Process stopped
+		} catch (RuntimeException e) {
+			this.log.debug("Error sampling process [" + process.pid() + "]", e);
+		}
+	}
+
+	/**
+	 * Sample a process of the tree : record its CPU time, add its resident set size.
+	 * @param process the process to sample
+	 * @param rss     the current sum of the resident set sizes, -1 if not available
+	 * @return the new sum of the resident set sizes, -1 if not available
+	 */
+	private long sample(ProcessHandle process, long rss) {
+		Optional<Duration> cpuTime = process.info().totalCpuDuration();
+		if (cpuTime.isPresent()) {
+			synchronized (this.cpuTimes) {
+				this.cpuTimes.put(process.pid(), cpuTime.get().toMillis());
+			}
+		}
+
+		long processRss = residentSetSize(process.pid());
+		return rss < 0 || processRss < 0 ? -1 : rss + processRss;
+	}
+
+	/**
+	 * Read the resident set size of a process, from /proc/&lt;pid&gt;/status (Linux only).
+	 * @param pid the process id
+	 * @return the resident set size in KB, -1 if not available
+	 */
+	private static long residentSetSize(long pid) {
+		if (! PROC) {
+			return -1;
+		}
+		File status = new File("/proc/" + pid + "/status");
+		try {
+			for (String line : Files.readAllLines(status.toPath(), UTF8)) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim());
+				}
+			}
+			// A zombie has no VmRSS
+			return 0;
+		} catch (IOException e) {
+			// The process exited
+			return 0;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
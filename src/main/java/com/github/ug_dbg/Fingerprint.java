@@ -0,0 +1,114 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A SHA-1 digest of strings and file contents, to check if the inputs of an execution changed.
+ * <br>
+ * Every element is prefixed with its type and length so that ("ab", "c") and ("a", "bc") do not collide.
+ */
+class Fingerprint {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final MessageDigest digest;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	Fingerprint() {
+		try {
+			this.digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	/**
+	 * Add a string to the fingerprint.
+	 * @param value the value to add. Can be null.
+	 * @return the current fingerprint
+	 */
+	Fingerprint add(String value) {
+		if (value == null) {
+			this.digest.update((byte) 0);
+			return this;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		this.digest.update((byte) 1);
+		this.digest.update((bytes.length + ":").getBytes(UTF8));
+		this.digest.update(bytes);
+		return this;
+	}
+
+	/**
+	 * Add some strings to the fingerprint.
+	 * @param values the values to add. Can be null.
+	 * @return the current fingerprint
+	 */
+	Fingerprint add(String[] values) {
+		if (values == null) {
+			return this.add((String) null);
+		}
+		this.add(String.valueOf(values.length));
+		for (String value : values) {
+			this.add(value);
+		}
+		return this;
+	}
+
+	/**
+	 * Add a file path and content to the fingerprint. A missing file is not an error.
+	 * @param file the file to add
+	 * @return the current fingerprint
+	 * @throws IOException error reading the file
+	 */
+	Fingerprint add(File file) throws IOException {
+		return this.add(file.getPath()).addContent(file);
+	}
+
+	/**
+	 * Add a file content only to the fingerprint, not its path : the fingerprint does not depend on the file location.
+	 * A missing file is not an error.
+	 * @param file the file to add
+	 * @return the current fingerprint
+	 * @throws IOException error reading the file
+	 */
+	Fingerprint addContent(File file) throws IOException {
+		if (! file.isFile()) {
+			this.digest.update((byte) 0);
+			return this;
+		}
+
+		this.digest.update((byte) 2);
+		InputStream input = new FileInputStream(file);
+		try {
+			int read;
+			while ((read = input.read(this.buffer)) != -1) {
+				this.digest.update(this.buffer, 0, read);
+			}
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+		return this;
+	}
+
+	/**
+	 * Compute the hexadecimal representation of the fingerprint. The fingerprint is then reset.
+	 * @return the fingerprint as a 40 characters hexadecimal string
+	 */
+	String hex() {
+		byte[] bytes = this.digest.digest();
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
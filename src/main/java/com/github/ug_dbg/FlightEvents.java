@@ -0,0 +1,100 @@
+package com.github.ug_dbg;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder events of the plugin, to correlate the npm/ng executions
+ * with what happens in the maven JVM (GC pauses, I/O...) in a single recording.
+ * <br>
+ * e.g. : <code>MAVEN_OPTS="-XX:StartFlightRecording=filename=build.jfr" mvn install</code>
+ * <br>
+ * When JFR is not recording, {@link Event#begin()}, {@link Event#end()} and {@link Event#commit()} are no-ops
+ * the JIT removes, and the events are allocated on the slow paths only (process start/exit, first output, full log buffer).
+ */
+class FlightEvents {
+
+	private FlightEvents() {}
+
+	/** An execution of an npm/ng command, that may be skipped or restored from the build cache. */
+	@Name("com.github.ug_dbg.Execution")
+	@Label("npm Execution")
+	@Category({"Maven", "npm"})
+	@Description("An npm/ng command execution of a mojo : executed, up-to-date or restored from the build cache")
+	static class Execution extends Event {
+		@Label("Module")
+		String module;
+
+		@Label("Command")
+		String command;
+
+		@Label("Working Directory")
+		String workingDir;
+
+		@Label("Outcome")
+		@Description("executed, up-to-date, cached or failed")
+		String outcome;
+	}
+
+	/** The launch of a process (fork/exec). */
+	@Name("com.github.ug_dbg.Spawn")
+	@Label("npm Process Spawn")
+	@Category({"Maven", "npm"})
+	@Description("The start of an npm/ng process")
+	static class Spawn extends Event {
+		@Label("Command")
+		String command;
+
+		@Label("PID")
+		long pid;
+	}
+
+	/** A process, from its start to its exit. */
+	@Name("com.github.ug_dbg.Process")
+	@Label("npm Process")
+	@Category({"Maven", "npm"})
+	@Description("An npm/ng process, from its start to its exit")
+	static class Process extends Event {
+		@Label("Command")
+		String command;
+
+		@Label("PID")
+		long pid;
+
+		@Label("Exit Code")
+		int exitCode;
+	}
+
+	/** The first output byte of a process, on std.out or std.err. */
+	@Name("com.github.ug_dbg.FirstOutput")
+	@Label("npm First Output")
+	@Category({"Maven", "npm"})
+	@Description("The first byte a process wrote on a standard stream")
+	static class FirstOutput extends Event {
+		@Label("Command")
+		String command;
+
+		@Label("Stream")
+		String stream;
+	}
+
+	/** The async log buffer was full : a producer (a stream pump) waited or a line was dropped. */
+	@Name("com.github.ug_dbg.LogBackpressure")
+	@Label("npm Log Backpressure")
+	@Category({"Maven", "npm"})
+	@Description("The async log buffer was full : the stream pump waited (BLOCK) or a line was dropped")
+	static class LogBackpressure extends Event {
+		@Label("Overflow Policy")
+		String overflow;
+
+		@Label("Attempts")
+		@Description("The number of failed attempts to buffer the line")
+		long attempts;
+
+		@Label("Dropped")
+		boolean dropped;
+	}
+}
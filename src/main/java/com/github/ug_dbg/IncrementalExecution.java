@@ -0,0 +1,288 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Incremental execution of a command line, given its declared inputs and outputs.
+ * <br>
+ * The inputs are files matched by glob patterns (e.g. 'src/**', 'package.json') in the working directory.
+ * Their content is hashed.
+ * <br>
+ * The outputs are files or directories (e.g. 'dist') in the working directory.
+ * Their paths, sizes and modification dates are hashed : this is enough to detect a deleted or modified output.
+ * <br>
+ * When a command succeeds, the hashes are stored in a properties index (e.g. target/npm-incremental.properties).
+ * The command is up-to-date if its inputs and outputs hashes match the index.
+ * <br>
+ * Any I/O error is logged and the command is considered not up-to-date.
+ */
+class IncrementalExecution {
+
+	/** The index file can be shared by several executions of a parallel goal. */
+	private static final Object INDEX_LOCK = new Object();
+
+	/** The {@link Trash} tombstones (e.g. a trashed node_modules being deleted) are never inputs. */
+	private static final String[] TOMBSTONE_EXCLUDES = {"**/" + Trash.TOMBSTONE_PREFIX + "*/**"};
+
+	private final File index;
+	private final String cmdLine;
+	private final String command;
+	private final File workingDir;
+	private final String[] inputs;
+	private final String[] inputExcludes;
+	private final String[] outputs;
+	private final Log log;
+	private final String key;
+
+	private String inputsHash;
+
+	/**
+	 * Create an incremental execution. If no input is declared, the command is never up-to-date.
+	 * @param index         the index file. If null, the command is never up-to-date but the inputs are still hashed for the build cache.
+	 * @param cmdLine       the command line
+	 * @param workingDir    the working directory of the command line
+	 * @param inputs        the input glob patterns, relative to the working directory. Can be null.
+	 * @param inputExcludes the input glob patterns to exclude. Can be null.
+	 * @param outputs       the output files or directories, relative to the working directory. Can be null.
+	 * @param log           the maven logger
+	 */
+	IncrementalExecution(
+		File index,
+		CommandLine cmdLine,
+		File workingDir,
+		String[] inputs,
+		String[] inputExcludes,
+		String[] outputs,
+		Log log) {
+
+		this.index = index;
+		this.cmdLine = cmdLine.toString();
+		this.command = command(cmdLine);
+		this.workingDir = workingDir;
+		this.inputs = inputs;
+		this.inputExcludes = inputExcludes;
+		this.outputs = outputs;
+		this.log = log;
+		this.key = new Fingerprint()
+			.add(workingDir.getAbsolutePath())
+			.add(this.cmdLine)
+			.add(inputs)
+			.add(inputExcludes)
+			.add(outputs)
+			.hex();
+	}
+
+	/**
+	 * Are there any declared inputs ?
+	 * @return true if there is at least 1 input pattern
+	 */
+	boolean hasInputs() {
+		return this.inputs != null && this.inputs.length > 0;
+	}
+
+	/**
+	 * Can the command be skipped when up-to-date ?
+	 * @return true if there is an index and at least 1 input pattern
+	 */
+	boolean isEnabled() {
+		return this.index != null && this.hasInputs();
+	}
+
+	/**
+	 * Check if the inputs and outputs did not change since the last successful execution.
+	 * The inputs hash is computed even if there is no index : it is the {@link #getCacheKey() build cache key}.
+	 * @return true if the command can be skipped
+	 */
+	boolean isUpToDate() {
+		if (! this.hasInputs()) {
+			return false;
+		}
+		try {
+			this.inputsHash = this.inputsHash();
+			if (this.index == null) {
+				return false;
+			}
+			String last = readIndex(this.index).getProperty(this.key);
+			return (this.inputsHash + ":" + this.outputsHash()).equals(last);
+		} catch (IOException e) {
+			this.log.warn("Could not check if execution is up-to-date in [" + this.workingDir + "]", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Record a successful execution : store the inputs hash (computed before the execution) and the outputs hash.
+	 */
+	void record() {
+		if (! this.isEnabled()) {
+			return;
+		}
+		try {
+			if (this.inputsHash == null) {
+				this.inputsHash = this.inputsHash();
+			}
+			String value = this.inputsHash + ":" + this.outputsHash();
+			synchronized (INDEX_LOCK) {
+				Properties properties = readIndex(this.index);
+				properties.setProperty(this.key, value);
+				writeIndex(this.index, properties);
+			}
+		} catch (IOException e) {
+			this.log.warn("Could not record execution in [" + this.index + "]", e);
+		}
+	}
+
+	/**
+	 * The execution key : a hash of the working directory, command line, inputs and outputs declaration.
+	 * @return the execution key
+	 */
+	String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * The build cache key : a hash of the configured command, inputs/outputs declaration and inputs hash.
+	 * Unlike {@link #getKey()}, it does not depend on the working directory location, so a fresh checkout can hit :
+	 * the inputs are hashed by relative path and content, the executable by name (see {@link #command(CommandLine)}).
+	 * @return the build cache key or null if the inputs hash was not computed
+	 */
+	String getCacheKey() {
+		if (! this.hasInputs() || this.inputsHash == null) {
+			return null;
+		}
+		return new Fingerprint()
+			.add(this.command)
+			.add(this.inputs)
+			.add(this.inputExcludes)
+			.add(this.outputs)
+			.add(this.inputsHash)
+			.hex();
+	}
+
+	/**
+	 * The declared output files or directories.
+	 * @return the outputs, resolved against the working directory. Never null.
+	 */
+	List<File> outputs() {
+		List<File> files = new ArrayList<File>();
+		if (this.outputs != null) {
+			for (String output : this.outputs) {
+				files.add(new File(this.workingDir, output));
+			}
+		}
+		return files;
+	}
+
+	private String inputsHash() throws IOException {
+		DirectoryScanner scanner = new DirectoryScanner();
+		scanner.setBasedir(this.workingDir);
+		scanner.setIncludes(this.inputs);
+		scanner.setExcludes(ArrayUtils.addAll(this.inputExcludes, TOMBSTONE_EXCLUDES));
+		scanner.addDefaultExcludes();
+		scanner.scan();
+
+		String[] files = scanner.getIncludedFiles();
+		Arrays.sort(files);
+		Fingerprint fingerprint = new Fingerprint();
+		for (String file : files) {
+			fingerprint.add(file.replace(File.separatorChar, '/')).addContent(new File(this.workingDir, file));
+		}
+		this.log.debug("Hashed [" + files.length + "] input file(s) in [" + this.workingDir + "]");
+		return fingerprint.hex();
+	}
+
+	/**
+	 * The command as configured : the executable name (e.g. 'npm', 'ng') and the arguments, 
+	 * without the resolved executable location (npm home, node_modules/.bin, 'cmd /c' wrapper on Windows).
+	 * @param cmdLine the command line
+	 * @return the executable name and the arguments
+	 */
+	static String command(CommandLine cmdLine) {
+		String[] arguments = cmdLine.getArguments();
+		int first = 0;
+		String executable = cmdLine.getExecutable();
+		if ("cmd".equalsIgnoreCase(executable) && arguments.length >= 2 && "/c".equalsIgnoreCase(arguments[0])) {
+			executable = arguments[1];
+			first = 2;
+		}
+
+		String name = new File(executable.replace('\\', '/')).getName();
+		String lowerCase = name.toLowerCase();
+		for (String extension : new String[] {".cmd", ".bat", ".exe"}) {
+			if (lowerCase.endsWith(extension)) {
+				name = name.substring(0, name.length() - extension.length());
+				break;
+			}
+		}
+
+		StringBuilder command = new StringBuilder(name);
+		for (int i = first; i < arguments.length; i++) {
+			command.append(' ').append(arguments[i]);
+		}
+		return command.toString();
+	}
+
+	private String outputsHash() {
+		Fingerprint fingerprint = new Fingerprint();
+		for (File output : this.outputs()) {
+			fingerprint.add(output.getPath());
+			if (! output.exists()) {
+				fingerprint.add("<missing>");
+				continue;
+			}
+
+			List<File> files = new ArrayList<File>();
+			if (output.isDirectory()) {
+				files.addAll(FileUtils.listFiles(output, null, true));
+			} else {
+				files.add(output);
+			}
+			Collections.sort(files);
+			for (File file : files) {
+				fingerprint.add(file.getPath()).add(file.length() + "/" + file.lastModified());
+			}
+		}
+		return fingerprint.hex();
+	}
+
+	private static Properties readIndex(File index) throws IOException {
+		Properties properties = new Properties();
+		if (! index.isFile()) {
+			return properties;
+		}
+		InputStream input = new FileInputStream(index);
+		try {
+			properties.load(input);
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+		return properties;
+	}
+
+	private static void writeIndex(File index, Properties properties) throws IOException {
+		FileUtils.forceMkdir(index.getParentFile());
+		OutputStream output = new FileOutputStream(index);
+		try {
+			properties.store(output, "mvn-npm-plugin incremental index : execution key = inputs hash:outputs hash");
+		} finally {
+			IOUtils.closeQuietly(output);
+		}
+	}
+}
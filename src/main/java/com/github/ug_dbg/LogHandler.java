@@ -1,80 +1,341 @@
 package com.github.ug_dbg;
 
-import org.apache.commons.exec.LogOutputStream;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.logging.Log;
 
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
 
 /**
- * A handler to write what is read from an output stream (e.g. std.out or std.err) into a logger. 
+ * A handler to write what is read from an output stream (e.g. std.out or std.err) into a logger.
+ * <br>
+ * The bytes are written in bulk by the stream pump : they are scanned for line boundaries in place
+ * and each line is decoded (UTF-8) once, using a reused decoder.
+ * <br>
+ * A line that ends with a single '\r' is a progress update (e.g. '10% building') that a terminal would overwrite :
+ * it is only logged if it is the last one before the end of the stream.
+ * '\n' and '\r\n' end a regular line.
+ * <br>
+ * Each line is classified using a {@link PrefixTrie} (e.g. 'npm ERR' → error).
+ * Unclassified lines have the {@link #defaultLevel()}.
+ * A line whose level is below the configured log level (or disabled in the maven logger) is dropped,
+ * before being decoded if the prefixes are ASCII.
+ * <br>
+ * A log handler is not thread safe : it is meant to be used by a single stream pump.
  */
-abstract class LogHandler extends LogOutputStream {
+abstract class LogHandler extends OutputStream {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int INITIAL_SIZE = 1024;
+
 	final Log logger;
 
-	private String errPrefix;
-	private String warnPrefix;
-	private String debugPrefix;
-	
-	LogHandler(
-		Log logger,
-		Level logLevel,
-		String errPrefix,
-		String warnPrefix,
-		String debugPrefix) {
-		super(logLevel.intValue());
+	private final Level logLevel;
+	private final PrefixTrie prefixes;
+	private final boolean errorEnabled;
+	private final boolean warnEnabled;
+	private final boolean infoEnabled;
+	private final boolean debugEnabled;
+	private final CharsetDecoder decoder = UTF8.newDecoder()
+		.onMalformedInput(CodingErrorAction.REPLACE)
+		.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/** The current line bytes. */
+	private byte[] line = new byte[INITIAL_SIZE];
+	private int lineSize;
+
+	/** The last progress update bytes. */
+	private byte[] progress = new byte[INITIAL_SIZE];
+	private int progressSize;
+
+	/** The last byte written was a '\r' : if the next one is '\n', the progress update was a regular line. */
+	private boolean carriageReturn;
+
+	private CharBuffer chars = CharBuffer.allocate(INITIAL_SIZE);
+
+	/** The command that writes to this handler, for the {@link FlightEvents.FirstOutput} event. */
+	private String command;
+
+	/** The output line and byte counts, logged or not. */
+	private long lines;
+	private long bytes;
+
+	/** The pattern of the line to notify the {@link #matchListener} of, once. */
+	private Pattern matchPattern;
+	private Runnable matchListener;
+
+	/** The time of the last write ({@link System#nanoTime()}), for the hang detection of {@link ProcessTree}. */
+	private volatile long lastOutput = System.nanoTime();
+
+	/**
+	 * Create a log handler.
+	 * @param logger   the maven logger
+	 * @param logLevel the lines with a lower level are dropped
+	 * @param prefixes the prefixes to classify the lines
+	 */
+	LogHandler(Log logger, Level logLevel, PrefixTrie prefixes) {
 		this.logger = logger;
-		this.errPrefix = errPrefix;
-		this.warnPrefix = warnPrefix;
-		this.debugPrefix = debugPrefix;
+		this.logLevel = logLevel;
+		this.prefixes = prefixes;
+		this.errorEnabled = logger.isErrorEnabled();
+		this.warnEnabled = logger.isWarnEnabled();
+		this.infoEnabled = logger.isInfoEnabled();
+		this.debugEnabled = logger.isDebugEnabled();
 	}
 
 	@Override
-	protected void processLine(String line, int logLevel) {
-		if (this.isDebug(line)) {
-			this.logger.debug(line);
-		} else if (this.isWarn(line)) {
-			this.logger.warn(line);
-		} else if (this.isError(line)) {
-			this.logger.error(line);
-		} else {
-			this.logDefault(line);
+	public void write(int b) {
+		this.write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		if (this.bytes == 0 && length > 0) {
+			this.firstOutput();
 		}
+		this.bytes += length;
+		this.lastOutput = System.nanoTime();
+		int end = offset + length;
+		int start = offset;
+
+		if (this.carriageReturn && length > 0) {
+			this.carriageReturn = false;
+			if (bytes[offset] == '\n') {
+				this.processProgressAsLine();
+				start++;
+			}
+		}
+
+		for (int i = start; i < end; i++) {
+			byte b = bytes[i];
+			if (b == '\n') {
+				this.append(bytes, start, i - start);
+				this.processLine();
+				start = i + 1;
+			} else if (b == '\r') {
+				this.append(bytes, start, i - start);
+				if (i + 1 < end && bytes[i + 1] == '\n') {
+					this.processLine();
+					i++;
+				} else {
+					this.endProgress();
+					this.carriageReturn = i + 1 == end;
+				}
+				start = i + 1;
+			}
+		}
+		this.append(bytes, start, end - start);
+	}
+
+	/**
+	 * Process the pending line (or the last progress update if there is no pending line).
+	 */
+	@Override
+	public void flush() {
+		if (this.lineSize > 0) {
+			this.processLine();
+		} else if (this.progressSize > 0) {
+			this.processProgressAsLine();
+		}
+	}
+
+	@Override
+	public void close() {
+		this.flush();
+	}
+
+	/**
+	 * Set the command that writes to this handler, for the JFR events.
+	 * @param command the command line
+	 * @return the current handler
+	 */
+	LogHandler command(String command) {
+		this.command = command;
+		return this;
+	}
+
+	/**
+	 * The number of lines written to this handler, logged or not. To read once the stream pump is stopped.
+	 * @return the output line count
+	 */
+	long lines() {
+		return this.lines;
+	}
+
+	/**
+	 * The number of bytes written to this handler. To read once the stream pump is stopped.
+	 * @return the output byte count
+	 */
+	long bytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * Notify a listener of the first line that matches a pattern (e.g. a server readiness log line), logged or not.
+	 * Until then, every line is decoded.
+	 * @param pattern  the pattern to find in the lines
+	 * @param listener the listener to run, on the stream pump thread
+	 * @return this log handler
+	 */
+	LogHandler match(Pattern pattern, Runnable listener) {
+		this.matchPattern = pattern;
+		this.matchListener = listener;
+		return this;
+	}
+
+	/**
+	 * The time of the last write, or of the handler creation. Can be read while the stream pump is running.
+	 * @return the {@link System#nanoTime()} of the last output
+	 */
+	long lastOutput() {
+		return this.lastOutput;
 	}
 
 	/**
 	 * Implement to chose the default log level for an input line.
-	 * @param line the line to log, that has not been identified as ERROR/WARN/DEBUG.
+	 * @return the level of the lines that have not been classified by a prefix.
 	 */
-	abstract void logDefault(String line);
-	
-	boolean isError(String line) {
-		return StringUtils.startsWithIgnoreCase(line, this.errPrefix);
+	abstract Level defaultLevel();
+
+	/**
+	 * Classify a line and write it to the logger, if its level is enabled.
+	 * @param line the line to log
+	 */
+	void processLine(String line) {
+		Level level = this.prefixes.match(line);
+		level = level == null ? this.defaultLevel() : level;
+		if (this.isEnabled(level)) {
+			this.log(level, line);
+		}
 	}
 
-	boolean isWarn(String line) {
-		return StringUtils.startsWithIgnoreCase(StringUtils.trim(line), this.warnPrefix);
+	/**
+	 * Is a line level enabled : not below {@link #logLevel} and enabled in the maven logger ?
+	 * @param level the line level
+	 * @return true if the line should be logged
+	 */
+	boolean isEnabled(Level level) {
+		if (level.intValue() < this.logLevel.intValue()) {
+			return false;
+		}
+		if (level.intValue() >= Level.SEVERE.intValue()) {
+			return this.errorEnabled;
+		}
+		if (level.intValue() >= Level.WARNING.intValue()) {
+			return this.warnEnabled;
+		}
+		if (level.intValue() >= Level.INFO.intValue()) {
+			return this.infoEnabled;
+		}
+		return this.debugEnabled;
 	}
 
-	boolean isDebug(String line) {
-		return StringUtils.startsWithIgnoreCase(StringUtils.trim(line), this.debugPrefix);
+	private void log(Level level, String line) {
+		if (level.intValue() >= Level.SEVERE.intValue()) {
+			this.logger.error(line);
+		} else if (level.intValue() >= Level.WARNING.intValue()) {
+			this.logger.warn(line);
+		} else if (level.intValue() >= Level.INFO.intValue()) {
+			this.logger.info(line);
+		} else {
+			this.logger.debug(line);
+		}
+	}
+
+	private void firstOutput() {
+		FlightEvents.FirstOutput event = new FlightEvents.FirstOutput();
+		if (event.shouldCommit()) {
+			event.command = this.command;
+			event.stream = this instanceof StdErr ? "stderr" : "stdout";
+			event.commit();
+		}
+	}
+
+	private void append(byte[] bytes, int offset, int length) {
+		if (length <= 0) {
+			return;
+		}
+		if (this.lineSize + length > this.line.length) {
+			byte[] larger = new byte[Math.max(this.line.length * 2, this.lineSize + length)];
+			System.arraycopy(this.line, 0, larger, 0, this.lineSize);
+			this.line = larger;
+		}
+		System.arraycopy(bytes, offset, this.line, this.lineSize, length);
+		this.lineSize += length;
+	}
+
+	/** The current line is a progress update : keep it (swap the buffers) until it is overwritten. */
+	private void endProgress() {
+		byte[] swap = this.progress;
+		this.progress = this.line;
+		this.progressSize = this.lineSize;
+		this.line = swap;
+		this.lineSize = 0;
+	}
+
+	private void processLine() {
+		this.processLine(this.line, this.lineSize);
+		this.lineSize = 0;
+		this.progressSize = 0;
+	}
+
+	private void processProgressAsLine() {
+		this.processLine(this.progress, this.progressSize);
+		this.progressSize = 0;
+	}
+
+	/**
+	 * Classify an encoded line. If the line level is disabled, drop it without decoding it. 
+	 * @param bytes  the line bytes
+	 * @param length the line length
+	 */
+	private void processLine(byte[] bytes, int length) {
+		this.lines++;
+		String decoded = null;
+		if (this.matchPattern != null) {
+			decoded = this.decode(bytes, length);
+			if (this.matchPattern.matcher(decoded).find()) {
+				this.matchPattern = null;
+				this.matchListener.run();
+			}
+		}
+		if (! this.prefixes.isAscii()) {
+			this.processLine(decoded == null ? this.decode(bytes, length) : decoded);
+			return;
+		}
+
+		Level level = this.prefixes.match(bytes, length);
+		level = level == null ? this.defaultLevel() : level;
+		if (this.isEnabled(level)) {
+			this.log(level, decoded == null ? this.decode(bytes, length) : decoded);
+		}
+	}
+
+	private String decode(byte[] bytes, int length) {
+		if (this.chars.capacity() < length) {
+			this.chars = CharBuffer.allocate(Math.max(this.chars.capacity() * 2, length));
+		}
+		this.chars.clear();
+		this.decoder.reset();
+		this.decoder.decode(ByteBuffer.wrap(bytes, 0, length), this.chars, true);
+		this.decoder.flush(this.chars);
+		return new String(this.chars.array(), 0, this.chars.position());
 	}
 
 	/**
 	 * Implementation that logs default line to 'warn' : that kinda suits the std.err output.
 	 */
 	static class StdErr extends LogHandler {
-		StdErr(
-			Log logger,
-			Level logLevel,
-			String errPrefix,
-			String warnPrefix,
-			String debugPrefix) {
-			super(logger, logLevel, errPrefix, warnPrefix, debugPrefix);
-		}
-	
-		void logDefault(String line) {
-			this.logger.warn(line);
+		StdErr(Log logger, Level logLevel, PrefixTrie prefixes) {
+			super(logger, logLevel, prefixes);
+		}
+
+		Level defaultLevel() {
+			return Level.WARNING;
 		}
 	}
 
@@ -82,18 +343,12 @@ abstract class LogHandler extends LogOutputStream {
 	 * Implementation that logs default line to 'info' : that kinda suits the std.out output.
 	 */
 	static class StdOut extends LogHandler {
-			StdOut(
-			Log logger,
-			Level logLevel,
-			String errPrefix,
-			String warnPrefix,
-			String debugPrefix) {
-			
-			super(logger, logLevel, errPrefix, warnPrefix, debugPrefix);
-		}
-	
-		void logDefault(String line) {
-			this.logger.info(line);
+		StdOut(Log logger, Level logLevel, PrefixTrie prefixes) {
+			super(logger, logLevel, prefixes);
+		}
+
+		Level defaultLevel() {
+			return Level.INFO;
 		}
 	}
 }
@@ -2,18 +2,28 @@ package com.github.ug_dbg;
 
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
 import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.logging.Level;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 /**
  * Goal which executes npm.
@@ -21,6 +31,17 @@ import java.util.logging.Level;
 @Mojo(name = "exec", threadSafe = true, defaultPhase = LifecyclePhase.COMPILE)
 public class NpmMojo extends AbstractMojo {
 
+	/** The npm commands that install the node modules and can be skipped if {@link #skipIfUpToDate}. */
+	private static final List<String> INSTALL_COMMANDS = Arrays.asList("install", "i", "ci", "clean-install");
+
+	/** The up-to-date marker file name, in the node modules directory. */
+	private static final String UP_TO_DATE_MARKER = ".mvn-npm-plugin.fingerprint";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The node/npm versions, by command line : '--version' runs once per JVM, not on each up-to-date check. */
+	private static final Map<String, String> VERSIONS = new ConcurrentHashMap<String, String>();
+
 	/**
 	 * The npm command to execute, such as 'install', 'test', etc. Required.
 	 */
@@ -39,52 +60,330 @@ public class NpmMojo extends AbstractMojo {
 	@Parameter(property = "npm.workingDir", defaultValue = "${basedir}")
 	private File workingDir;
 
+	/**
+	 * The working directories to run the command in, e.g. the packages of a monorepo. Optional.
+	 * If set (or {@link #workingDirPatterns}), {@link #workingDir} is ignored.
+	 */
+	@Parameter
+	private File[] workingDirs;
+
+	/**
+	 * Glob patterns of the working directories to run the command in, relative to basedir (e.g. 'packages/*'). Optional.
+	 * Only the directories that contain a package.json are matched. 'node_modules' directories are excluded.
+	 */
+	@Parameter(property = "npm.workingDirPatterns")
+	private String[] workingDirPatterns;
+
+	/**
+	 * The maximum number of {@link #workingDirs} to run concurrently. 
+	 * A working directory is started as soon as the packages its package.json depends on succeeded.
+	 * Optional. If not specified (or &lt; 1), the number of available processors will be used.
+	 */
+	@Parameter(property = "npm.threads", defaultValue = "0")
+	private int threads;
+
+	/** The project base directory, for the {@link #workingDirPatterns}. */
+	@Parameter(defaultValue = "${basedir}", readonly = true)
+	private File basedir;
+
 	/**
 	 * The directory that contains npm executable. Optional. If not specified,
 	 * we will assume that npm is in the system path.
 	 */
 	@Parameter(property = "npm.home")
 	private File npmHome;
+
+	/**
+	 * If 'true', skip an install command ('install', 'i', 'ci', 'clean-install') when package.json, package-lock.json,
+	 * node/npm versions and arguments did not change since the last successful install. Default is 'false'.
+	 */
+	@Parameter(property = "npm.skipIfUpToDate", defaultValue = "false")
+	private boolean skipIfUpToDate;
+
+	/** The node modules dir, where the up-to-date marker is stored. Optional. If not specified, 'node_modules' will be used. */
+	@Parameter(property = "npm.nodeModulesDir", defaultValue = "node_modules")
+	private String nodeModulesDir;
+
+	/** The package-lock. Optional. If not specified, 'package-lock.json' will be used. */
+	@Parameter(property = "npm.packageLockFile", defaultValue = "package-lock.json")
+	private String packageLockFile;
+
+	/** The npm package.json file name. Optional. If not specified, 'package.json' will be used. */
+	@Parameter(property = "npm.packageJsonFile", defaultValue = "package.json")
+	private String packageJsonFile;
 	
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		this.executeOrStart("npm " + this.command, new TaskScheduler.Task() {
+			public void run() throws MojoExecutionException, MojoFailureException {
+				NpmMojo.this.executeGoal();
+			}
+		});
+	}
+
+	private void executeGoal() throws MojoExecutionException, MojoFailureException {
+		List<File> workingDirs = this.workingDirs();
+		if (workingDirs == null) {
+			this.execute(this.workingDir);
+			return;
+		}
+		if (workingDirs.isEmpty()) {
+			this.getLog().warn("No working directory matches " + Arrays.toString(this.workingDirPatterns));
+			return;
+		}
+
+		PackageGraph graph = new PackageGraph(workingDirs, this.packageJsonFile, this.getLog());
+		TaskScheduler scheduler = new TaskScheduler(this.threads, this.getLog());
+		scheduler.setHistory(this.durationHistory(), this.historyScope() + "|");
+		for (final File dir : workingDirs) {
+			List<String> dependencies = new ArrayList<String>();
+			for (File dependency : graph.dependencies(dir)) {
+				dependencies.add(dependency.getAbsolutePath());
+			}
+			this.getLog().debug("Package [" + graph.name(dir) + "] in [" + dir + "] depends on " + dependencies);
+
+			scheduler.add(dir.getAbsolutePath(), new TaskScheduler.Task() {
+				public void run() throws MojoExecutionException, MojoFailureException {
+					NpmMojo.this.execute(dir);
+				}
+			}, dependencies);
+		}
+		scheduler.execute();
+	}
+
+	/**
+	 * What runs in each working directory, for the duration history.
+	 * @return 'npm', 'npm {command}' or 'npm {command} {args}'
+	 */
+	private String historyScope() {
+		StringBuilder scope = new StringBuilder("npm");
+		if (StringUtils.isNotBlank(this.command)) {
+			scope.append(' ').append(this.command.trim());
+		}
+		if (this.args != null && this.args.length > 0) {
+			scope.append(' ').append(StringUtils.join(this.args, " "));
+		}
+		return scope.toString();
+	}
+
+	/**
+	 * The {@link #workingDirs} and the directories that match the {@link #workingDirPatterns}.
+	 * @return the working directories, sorted and without duplicates. null if neither is set.
+	 */
+	private List<File> workingDirs() {
+		boolean hasDirs = this.workingDirs != null && this.workingDirs.length > 0;
+		boolean hasPatterns = this.workingDirPatterns != null && this.workingDirPatterns.length > 0;
+		if (! hasDirs && ! hasPatterns) {
+			return null;
+		}
+
+		Set<File> dirs = new TreeSet<File>();
+		if (hasDirs) {
+			dirs.addAll(Arrays.asList(this.workingDirs));
+		}
+		if (hasPatterns) {
+			DirectoryScanner scanner = new DirectoryScanner();
+			scanner.setBasedir(this.basedir);
+			scanner.setIncludes(this.workingDirPatterns);
+			scanner.setExcludes(new String[] {"**/node_modules/**"});
+			scanner.scan();
+			for (String dir : scanner.getIncludedDirectories()) {
+				File workingDir = new File(this.basedir, dir);
+				if (new File(workingDir, this.packageJsonFile).isFile()) {
+					dirs.add(workingDir);
+				}
+			}
+		}
+		return new ArrayList<File>(dirs);
+	}
+
+	private void execute(final File workingDir) throws MojoExecutionException, MojoFailureException {
 		CommandLine cmd = this.addArguments(this.addCommand(this.getNpmCommand()));
-		this.getLog().info("Executing [" + cmd.toString() + "] in [" + this.workingDir.toString() + "]");
-		this.execute(cmd);
+
+		BackgroundExecutions early = EarlyInstallParticipant.take(workingDir, cmd);
+		if (early != null) {
+			this.getLog().info("Waiting for [" + cmd.toString() + "] in [" + workingDir + "], started early");
+			early.await(this.getLog());
+			return;
+		}
+		this.executeUnlessUpToDate(cmd, workingDir);
 	}
 
-	private void execute(CommandLine cmdLine) throws MojoFailureException, MojoExecutionException {
-		execute(cmdLine, this.workingDir, this.useLogHandler(), this.getLog(), this.logLevel());
+	/**
+	 * Start the install command of this execution in the background, before its turn in the build : 
+	 * called by the {@link EarlyInstallParticipant} once the projects are read. 
+	 * <br>
+	 * The install is not started if it is not a single directory install, if it is incremental ({@link #hasInputs()}) 
+	 * or already in the background, if the build deletes its node modules or package-lock or rewrites its package.json,
+	 * or if it is up-to-date.
+	 * @param slots    the early install slots, to acquire before running the install
+	 * @param modified the files and directories deleted by the 'clean' executions or rewritten by the 'version' executions of the build
+	 * @return true if the install was started
+	 * @throws MojoExecutionException error reading package.json or package-lock.json
+	 */
+	boolean startEarly(final Semaphore slots, Set<File> modified) throws MojoExecutionException {
+		if (! isInstall(this.command) || this.hasInputs() || this.background() || this.workingDirs() != null) {
+			return false;
+		}
+		if (modified.contains(canonical(new File(this.workingDir, this.nodeModulesDir)))
+			|| modified.contains(canonical(new File(this.workingDir, this.packageLockFile)))) {
+			this.getLog().debug("Not starting [" + this.command + "] in [" + this.workingDir + "] early : cleaned by the build");
+			return false;
+		}
+		if (modified.contains(canonical(new File(this.workingDir, this.packageJsonFile)))) {
+			this.getLog().debug("Not starting [" + this.command + "] in [" + this.workingDir + "] early : its version is set by the build");
+			return false;
+		}
+		if (this.skipIfUpToDate && this.installFingerprint(this.workingDir).equals(readMarker(this.marker(this.workingDir)))) {
+			this.getLog().debug("Not starting [" + this.command + "] in [" + this.workingDir + "] early : up-to-date");
+			return false;
+		}
+
+		final CommandLine cmd = this.addArguments(this.addCommand(this.getNpmCommand()));
+		this.getLog().info("Starting [" + cmd.toString() + "] in [" + this.workingDir + "] early");
+		this.start(EarlyInstallParticipant.key(this.workingDir, cmd), "early " + cmd.toString(), new TaskScheduler.Task() {
+			public void run() throws MojoExecutionException, MojoFailureException {
+				slots.acquireUninterruptibly();
+				try {
+					NpmMojo.this.executeUnlessUpToDate(cmd, NpmMojo.this.workingDir);
+				} finally {
+					slots.release();
+				}
+			}
+		});
+		return true;
 	}
-	
-	protected static void execute(
-		CommandLine cmdLine, 
-		File workingDir, 
-		boolean useLogHandler,
-		Log log, 
-		Level level) 
-		throws MojoFailureException, MojoExecutionException {
-		
+
+	/**
+	 * Execute the command in a working directory, unless it is an install that is up-to-date ({@link #skipIfUpToDate}).
+	 * @param cmd        the npm command line
+	 * @param workingDir the working directory
+	 */
+	private void executeUnlessUpToDate(CommandLine cmd, final File workingDir) throws MojoExecutionException, MojoFailureException {
+		File marker = null;
+		if (this.skipIfUpToDate && isInstall(this.command)) {
+			marker = this.marker(workingDir);
+			if (this.installFingerprint(workingDir).equals(readMarker(marker))) {
+				this.getLog().info("Skipping [" + cmd.toString() + "] in [" + workingDir + "] : up-to-date");
+				return;
+			}
+			// Do not keep a marker for a node modules directory that is about to be modified
+			FileUtils.deleteQuietly(marker);
+		}
+
+		this.executeIncremental(cmd, workingDir, new Executable() {
+			public void execute(CommandLine cmdLine) throws MojoExecutionException, MojoFailureException {
+				NpmMojo.this.execute(cmdLine, workingDir);
+			}
+		});
+
+		// The install creates or rewrites package-lock.json : fingerprint what it left
+		if (marker != null) {
+			this.writeMarker(marker, this.installFingerprint(workingDir));
+		}
+	}
+
+	/**
+	 * Compute the fingerprint of an install : package.json, package-lock.json, node/npm versions and the arguments.
+	 * @param workingDir the working directory
+	 * @return the install fingerprint
+	 * @throws MojoExecutionException error reading package.json or package-lock.json
+	 */
+	private String installFingerprint(File workingDir) throws MojoExecutionException {
+		try {
+			return new Fingerprint()
+				.add(this.command)
+				.add(this.args)
+				.add(version(this.getNodeCommand(), workingDir))
+				.add(version(this.getNpmCommand(), workingDir))
+				.add(new File(workingDir, this.packageJsonFile))
+				.add(new File(workingDir, this.packageLockFile))
+				.hex();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error computing the install fingerprint in [" + workingDir + "]", e);
+		}
+	}
+
+	/**
+	 * Is a command an install command, that can be skipped if up-to-date ?
+	 * @param command the npm command
+	 * @return true for 'install', 'i', 'ci', 'clean-install'
+	 */
+	private static boolean isInstall(String command) {
+		return INSTALL_COMMANDS.contains(command);
+	}
+
+	/**
+	 * The up-to-date marker of the installed node modules.
+	 * @param workingDir the working directory
+	 * @return the marker file
+	 */
+	private File marker(File workingDir) {
+		return new File(new File(workingDir, this.nodeModulesDir), UP_TO_DATE_MARKER);
+	}
+
+	private static File canonical(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			return file.getAbsoluteFile();
+		}
+	}
+
+	/**
+	 * Get the version of an executable, using its '--version' argument, once per JVM and command line.
+	 * @param cmdLine    the executable command line
+	 * @param workingDir the working directory
+	 * @return the trimmed output of the command or null if the command failed
+	 */
+	static String version(CommandLine cmdLine, File workingDir) {
+		String key = cmdLine.toString();
+		String version = VERSIONS.get(key);
+		if (version == null) {
+			version = executeVersion(cmdLine, workingDir);
+			if (version != null) {
+				VERSIONS.put(key, version);
+			}
+		}
+		return version;
+	}
+
+	private static String executeVersion(CommandLine cmdLine, File workingDir) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
 		try {
-			
 			DefaultExecutor executor = new DefaultExecutor();
 			executor.setWorkingDirectory(workingDir);
-			
-			if (useLogHandler) {
-				executor.setStreamHandler(new PumpStreamHandler(
-					new LogHandler.StdOut(log, level, "npm ERR", "npm WARN", "npm notice"),
-					new LogHandler.StdErr(log, level, "npm ERR", "npm WARN", "npm notice"),
-					System.in
-				));
-			}
+			executor.setStreamHandler(new PumpStreamHandler(output));
+			executor.execute(new CommandLine(cmdLine).addArgument("--version"));
+			return StringUtils.trim(new String(output.toByteArray(), UTF8));
+		} catch (IOException e) {
+			return null;
+		}
+	}
 
-			executor.execute(cmdLine);
-		} catch (ExecuteException e) {
-			throw new MojoFailureException("npm failure", e);
+	private static String readMarker(File marker) {
+		try {
+			return marker.isFile() ? StringUtils.trim(FileUtils.readFileToString(marker, UTF8)) : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void writeMarker(File marker, String fingerprint) {
+		if (! marker.getParentFile().isDirectory()) {
+			this.getLog().debug("No node modules directory [" + marker.getParentFile() + "]. No up-to-date marker.");
+			return;
+		}
+		try {
+			FileUtils.writeStringToFile(marker, fingerprint, UTF8);
 		} catch (IOException e) {
-			throw new MojoExecutionException("Error executing NPM", e);
+			this.getLog().warn("Could not write up-to-date marker [" + marker + "]", e);
 		}
 	}
 
+	private void execute(CommandLine cmdLine, File workingDir) throws MojoFailureException, MojoExecutionException {
+		new CommandExecutor(this, "npm", "npm ERR", "npm WARN", "npm notice").execute(cmdLine, workingDir);
+	}
+
 	private CommandLine addCommand(CommandLine cmdLine) {
 		return cmdLine.addArgument(this.command);
 	}
@@ -96,4 +395,12 @@ public class NpmMojo extends AbstractMojo {
 	private CommandLine getNpmCommand() {
 		return getCommand("npm", this.npmHome);
 	}
+
+	/**
+	 * Node is an executable (node.exe on Windows), not a script : no need for {@link #getCommand(String, File)}.
+	 * @return the node command line, assuming node lies next to npm
+	 */
+	private CommandLine getNodeCommand() {
+		return new CommandLine(this.npmHome == null ? "node" : new File(this.npmHome, "node").getAbsolutePath());
+	}
 }
\ No newline at end of file
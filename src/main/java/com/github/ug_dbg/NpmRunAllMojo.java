@@ -9,6 +9,12 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * Goal which executes all arguments as npm commands.
@@ -41,20 +47,165 @@ public class NpmRunAllMojo extends AbstractMojo {
 	@Parameter(property = "npm.home")
 	private File npmHome;
 
+	/**
+	 * If true, run the args concurrently, with respect to {@link #dependsOn}. Default is 'false'.
+	 */
+	@Parameter(property = "npm.parallel", defaultValue = "false")
+	private boolean parallel;
+
+	/**
+	 * The maximum number of args to run concurrently in {@link #parallel} mode. 
+	 * Optional. If not specified (or &lt; 1), the number of available processors will be used.
+	 */
+	@Parameter(property = "npm.threads", defaultValue = "0")
+	private int threads;
+
+	/**
+	 * The dependencies between args, in {@link #parallel} mode. Optional.
+	 * <br>
+	 * Each property name is an arg, the value is a comma separated list of the args it depends on : 
+	 * <pre>
+	 * &lt;dependsOn&gt;
+	 *     &lt;property&gt;&lt;name&gt;run build:app&lt;/name&gt;&lt;value&gt;run build:lib&lt;/value&gt;&lt;/property&gt;
+	 * &lt;/dependsOn&gt;
+	 * </pre>
+	 */
+	@Parameter
+	private Properties dependsOn;
+
+	/**
+	 * If true, run the package.json scripts directly with the shell, without the npm CLI startup.
+	 * Only the args that run a declared script ('run build', 'run build -- --prod', 'test'...) run directly,
+	 * with their 'pre'/'post' hooks, 'node_modules/.bin' on the PATH and the npm_* variables (see {@link PackageScripts}).
+	 * The other args run with npm. Default is 'false'.
+	 */
+	@Parameter(property = "npm.directRun", defaultValue = "false")
+	private boolean directRun;
+
+	/** The npm package.json file name, for {@link #directRun}. Optional. If not specified, 'package.json' will be used. */
+	@Parameter(property = "npm.packageJsonFile", defaultValue = "package.json")
+	private String packageJsonFile;
+
+	/** The package.json scripts, read once for all the args. */
+	private PackageScripts scripts;
+
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		this.executeOrStart("exec-all " + StringUtils.join(this.args, ","), new TaskScheduler.Task() {
+			public void run() throws MojoExecutionException, MojoFailureException {
+				NpmRunAllMojo.this.executeGoal();
+			}
+		});
+	}
+
+	private void executeGoal() throws MojoExecutionException, MojoFailureException {
+		if (this.parallel) {
+			this.executeParallel();
+			return;
+		}
+
 		for (String arg : this.args) {
-			CommandLine cmd = this.addCommand(this.getNpmCommand());
-			for (String parsedArgument : parseArgument(arg)) {
-				cmd = cmd.addArgument(parsedArgument);
+			this.execute(arg);
+		}
+	}
+
+	/**
+	 * Run the args on a {@link TaskScheduler} : an arg is started as soon as the args it depends on succeeded.
+	 * The args are the task names : they must be unique.
+	 * @throws MojoExecutionException duplicate arg
+	 */
+	private void executeParallel() throws MojoExecutionException, MojoFailureException {
+		Set<String> unique = new HashSet<String>();
+		for (String arg : this.args) {
+			if (! unique.add(arg)) {
+				throw new MojoExecutionException("Duplicate arg [" + arg + "] : the args must be unique in parallel mode ('npm.parallel')");
+			}
+		}
+
+		TaskScheduler scheduler = new TaskScheduler(this.threads, this.getLog());
+		scheduler.setHistory(this.durationHistory(), this.workingDir.getAbsolutePath() + "|" + this.runner() + "|");
+		for (final String arg : this.args) {
+			scheduler.add(arg, new TaskScheduler.Task() {
+				public void run() throws MojoExecutionException, MojoFailureException {
+					NpmRunAllMojo.this.execute(arg);
+				}
+			}, this.dependencies(arg));
+		}
+		scheduler.execute();
+	}
+
+	/**
+	 * What runs the args, for the duration history : direct script runs and npm runs do not last the same.
+	 * @return 'npm', 'npm {command}', 'direct' or 'direct {command}'
+	 */
+	private String runner() {
+		String runner = this.directRun ? "direct" : "npm";
+		return StringUtils.isBlank(this.command) ? runner : runner + " " + this.command.trim();
+	}
+
+	private List<String> dependencies(String arg) {
+		String value = this.dependsOn == null ? null : this.dependsOn.getProperty(arg);
+		if (StringUtils.isBlank(value)) {
+			return Collections.emptyList();
+		}
+
+		List<String> dependencies = new ArrayList<String>();
+		for (String dependency : StringUtils.split(value, ',')) {
+			if (StringUtils.isNotBlank(dependency)) {
+				dependencies.add(dependency.trim());
 			}
+		}
+		return dependencies;
+	}
 
-			this.getLog().info("Executing [" + cmd.toString() + "] in [" + this.workingDir.toString() + "]");
-			this.execute(cmd);
+	private void execute(String arg) throws MojoFailureException, MojoExecutionException {
+		CommandLine cmd = this.addCommand(this.getNpmCommand());
+		List<String> arguments = new ArrayList<String>();
+		if (StringUtils.isNotBlank(this.command)) {
+			arguments.add(this.command);
 		}
+		for (String parsedArgument : parseArgument(arg)) {
+			cmd = cmd.addArgument(parsedArgument);
+			arguments.add(parsedArgument);
+		}
+
+		final PackageScripts.Run run = this.directRun ? this.scripts().run(arguments) : null;
+		if (this.directRun && run == null) {
+			this.getLog().debug("[" + arg + "] does not run a declared script without npm options : running it with npm");
+		}
+
+		// The incremental key is the npm command line : direct and npm runs share their executions history
+		this.executeIncremental(cmd, this.workingDir, new Executable() {
+			public void execute(CommandLine cmdLine) throws MojoExecutionException, MojoFailureException {
+				if (run == null) {
+					NpmRunAllMojo.this.execute(cmdLine);
+				} else {
+					NpmRunAllMojo.this.execute(run);
+				}
+			}
+		});
 	}
 
 	private void execute(CommandLine cmdLine) throws MojoFailureException, MojoExecutionException {
-		NpmMojo.execute(cmdLine, this.workingDir, this.useLogHandler(), this.getLog(), this.logLevel());
+		new CommandExecutor(this, "npm", "npm ERR", "npm WARN", "npm notice").execute(cmdLine, this.workingDir);
+	}
+
+	/**
+	 * Run a script directly, with its hooks. A failing hook stops the run, as with npm.
+	 */
+	private void execute(PackageScripts.Run run) throws MojoFailureException, MojoExecutionException {
+		for (String event : run.events()) {
+			CommandLine cmdLine = run.commandLine(event);
+			this.getLog().info("Running script [" + event + "] directly : [" + cmdLine + "] in [" + this.workingDir + "]");
+			new CommandExecutor(this, "script " + event, "npm ERR", "npm WARN", "npm notice")
+				.execute(cmdLine, this.workingDir, run.environment(event, this.npmHome));
+		}
+	}
+
+	private synchronized PackageScripts scripts() throws MojoExecutionException {
+		if (this.scripts == null) {
+			this.scripts = new PackageScripts(this.workingDir, this.packageJsonFile);
+		}
+		return this.scripts;
 	}
 
 	private CommandLine addCommand(CommandLine cmdLine) {
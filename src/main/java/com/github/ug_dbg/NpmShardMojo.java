@@ -0,0 +1,328 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Goal which splits the test files of an npm project into shards and runs an npm command (e.g. 'test') for each shard,
+ * concurrently.
+ * <br>
+ * The shards are balanced using the duration history of the test files :
+ * the longest files are assigned first, each to the shard with the lowest expected duration.
+ * The duration of a shard is shared between its files, in proportion of their expected durations.
+ * Without history, the file sizes are used as weights.
+ * <br>
+ * The shards run on a {@link TaskScheduler} that continues on failure : 
+ * all the shards run to completion and the build fails if any shard failed.
+ */
+@Mojo(name = "exec-shards", threadSafe = true, defaultPhase = LifecyclePhase.TEST)
+public class NpmShardMojo extends AbstractMojo {
+
+	/** How the test files of a shard are passed to the npm command. */
+	protected enum ShardFiles {
+		/** Append the files after '--' : 'npm test -- a.spec.js b.spec.js' (e.g. Jest). */
+		ARGS,
+		/** Set the {@link #SHARD_FILES} environment variable, separated by the path separator (e.g. Karma config). */
+		ENV
+	}
+
+	/** The environment variable of the shard index, from 1. Always set. */
+	static final String SHARD_INDEX = "NPM_SHARD_INDEX";
+
+	/** The environment variable of the shard count. Always set. */
+	static final String SHARD_COUNT = "NPM_SHARD_COUNT";
+
+	/** The environment variable of the shard files, if {@link ShardFiles#ENV}. */
+	static final String SHARD_FILES = "NPM_SHARD_FILES";
+
+	/** The max command line length on Windows ('cmd /c'), if {@link ShardFiles#ARGS}. */
+	private static final int MAX_WINDOWS_COMMAND_LENGTH = 8191;
+
+	/** The max command line length elsewhere, if {@link ShardFiles#ARGS} : a conservative share of ARG_MAX. */
+	private static final int MAX_COMMAND_LENGTH = 128 * 1024;
+
+	/**
+	 * The npm command to run for each shard. Optional. If not specified, 'test' will be used.
+	 */
+	@Parameter(property = "npm.command", defaultValue = "test")
+	private String command;
+
+	/**
+	 * The arguments to pass to npm command. Optional.
+	 */
+	@Parameter(property = "npm.args")
+	private String[] args;
+
+	/**
+	 * The working directory. Optional. If not specified, basedir will be used.
+	 */
+	@Parameter(property = "npm.workingDir", defaultValue = "${basedir}")
+	private File workingDir;
+
+	/**
+	 * The directory that contains npm executable. Optional. If not specified,
+	 * we will assume that npm is in the system path.
+	 */
+	@Parameter(property = "npm.home")
+	private File npmHome;
+
+	/** The glob patterns of the test files, relative to the working directory (e.g. 'src/**&#47;*.spec.ts'). Required. */
+	@Parameter(property = "npm.testPatterns", required = true)
+	private String[] testPatterns;
+
+	/** The glob patterns of the files to exclude. 'node_modules' is always excluded. */
+	@Parameter(property = "npm.testExcludes")
+	private String[] testExcludes;
+
+	/** The number of shards. Optional. If not specified (or &lt; 1), the number of available processors will be used. */
+	@Parameter(property = "npm.shards", defaultValue = "0")
+	private int shards;
+
+	/** How the files of a shard are passed to the npm command : ARGS or ENV. Default is ARGS. */
+	@Parameter(property = "npm.shardFiles", defaultValue = "ARGS")
+	private ShardFiles shardFiles;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		this.executeOrStart("exec-shards npm " + this.command, new TaskScheduler.Task() {
+			public void run() throws MojoExecutionException, MojoFailureException {
+				NpmShardMojo.this.executeGoal();
+			}
+		});
+	}
+
+	private void executeGoal() throws MojoExecutionException, MojoFailureException {
+		List<String> files = this.testFiles();
+		if (files.isEmpty()) {
+			this.getLog().warn("No test file matches " + Arrays.toString(this.testPatterns) + " in [" + this.workingDir + "]");
+			return;
+		}
+
+		DurationHistory history = this.durationHistory();
+		String scope = this.workingDir.getAbsolutePath() + "|test|";
+		Map<String, Double> weights = this.weights(files, history, scope);
+		List<List<String>> shards = partition(files, weights, this.shards < 1 ? Runtime.getRuntime().availableProcessors() : this.shards);
+
+		// All the command lines are checked before any shard starts
+		final int count = shards.size();
+		List<CommandLine> commandLines = new ArrayList<CommandLine>();
+		for (int i = 0; i < count; i++) {
+			commandLines.add(this.commandLine(i + 1, count, shards.get(i)));
+		}
+
+		TaskScheduler scheduler = new TaskScheduler(count, this.getLog());
+		scheduler.setContinueOnFailure(true);
+		for (int i = 0; i < count; i++) {
+			final int index = i + 1;
+			final CommandLine cmd = commandLines.get(i);
+			final List<String> shard = shards.get(i);
+			scheduler.add(shardName(index, count), new TaskScheduler.Task() {
+				public void run() throws MojoExecutionException, MojoFailureException {
+					NpmShardMojo.this.execute(index, count, shard, cmd);
+				}
+			}, Collections.<String>emptyList());
+		}
+
+		try {
+			scheduler.execute();
+		} finally {
+			if (history != null) {
+				for (int i = 0; i < count; i++) {
+					Long duration = scheduler.processDuration(shardName(i + 1, count));
+					if (duration != null) {
+						record(history, scope, shards.get(i), weights, duration);
+					}
+				}
+				history.save();
+			}
+		}
+	}
+
+	/**
+	 * The command line of a shard : the files are appended after '--' if {@link ShardFiles#ARGS}.
+	 * @param index the shard index, from 1
+	 * @param count the shard count
+	 * @param files the shard test files
+	 * @return the shard command line
+	 * @throws MojoExecutionException the command line is too long for the OS
+	 */
+	private CommandLine commandLine(int index, int count, List<String> files) throws MojoExecutionException {
+		CommandLine cmd = getCommand("npm", this.npmHome).addArgument(this.command);
+		boolean separator = false;
+		if (this.args != null) {
+			for (String arg : this.args) {
+				for (String parsedArgument : parseArgument(arg)) {
+					cmd.addArgument(parsedArgument);
+					separator |= "--".equals(parsedArgument);
+				}
+			}
+		}
+		if (this.shardFiles == ShardFiles.ENV) {
+			return cmd;
+		}
+
+		if (! separator) {
+			cmd.addArgument("--");
+		}
+		for (String file : files) {
+			cmd.addArgument(file);
+		}
+
+		int length = cmd.toString().length();
+		int maxLength = isWindows() ? MAX_WINDOWS_COMMAND_LENGTH : MAX_COMMAND_LENGTH;
+		if (length > maxLength) {
+			throw new MojoExecutionException(
+				"The command line of shard [" + index + "/" + count + "] is " + length + " characters long, "
+				+ "over the " + maxLength + " characters limit of this OS : "
+				+ "use more shards ('npm.shards') or pass the files in the environment ('npm.shardFiles' ENV)"
+			);
+		}
+		return cmd;
+	}
+
+	/**
+	 * Run the command for a shard.
+	 * @param index the shard index, from 1
+	 * @param count the shard count
+	 * @param files the shard test files
+	 * @param cmd   the shard command line
+	 */
+	private void execute(int index, int count, List<String> files, CommandLine cmd) throws MojoExecutionException, MojoFailureException {
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put(SHARD_INDEX, String.valueOf(index));
+		environment.put(SHARD_COUNT, String.valueOf(count));
+		if (this.shardFiles == ShardFiles.ENV) {
+			environment.put(SHARD_FILES, StringUtils.join(files, File.pathSeparator));
+		}
+
+		this.getLog().info("Executing shard [" + index + "/" + count + "] : [" + files.size() + "] test file(s)");
+		this.getLog().debug("Shard [" + index + "/" + count + "] : " + files);
+		new CommandExecutor(this, "npm shard " + index, "npm ERR", "npm WARN", "npm notice").execute(cmd, this.workingDir, environment);
+	}
+
+	private static String shardName(int index, int count) {
+		return "shard " + index + "/" + count;
+	}
+
+	/**
+	 * The test files, relative to the working directory, sorted.
+	 */
+	private List<String> testFiles() {
+		List<String> excludes = new ArrayList<String>();
+		excludes.add("**/node_modules/**");
+		if (this.testExcludes != null) {
+			excludes.addAll(Arrays.asList(this.testExcludes));
+		}
+
+		DirectoryScanner scanner = new DirectoryScanner();
+		scanner.setBasedir(this.workingDir);
+		scanner.setIncludes(this.testPatterns);
+		scanner.setExcludes(excludes.toArray(new String[excludes.size()]));
+		scanner.scan();
+
+		List<String> files = new ArrayList<String>();
+		for (String file : scanner.getIncludedFiles()) {
+			files.add(file.replace(File.separatorChar, '/'));
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * The expected duration of each file, from the history. A file without history has the average expected duration.
+	 * Without any history, the file sizes are used.
+	 */
+	private Map<String, Double> weights(List<String> files, DurationHistory history, String scope) {
+		Map<String, Double> weights = new HashMap<String, Double>();
+		double total = 0;
+		for (String file : files) {
+			Long expected = history == null ? null : history.expected(scope + file);
+			if (expected != null) {
+				weights.put(file, expected.doubleValue());
+				total += expected;
+			}
+		}
+
+		if (weights.isEmpty()) {
+			for (String file : files) {
+				weights.put(file, (double) Math.max(1, new File(this.workingDir, file).length()));
+			}
+			return weights;
+		}
+
+		double average = total / weights.size();
+		for (String file : files) {
+			if (! weights.containsKey(file)) {
+				weights.put(file, average);
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * Partition the files into shards : the heaviest files first, each to the lightest shard (LPT).
+	 * @param files   the files to partition
+	 * @param weights the weight (expected duration) of each file
+	 * @param count   the number of shards
+	 * @return the shards. There are fewer shards than 'count' if there are fewer files.
+	 */
+	static List<List<String>> partition(List<String> files, final Map<String, Double> weights, int count) {
+		List<String> sorted = new ArrayList<String>(files);
+		Collections.sort(sorted, new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				return weights.get(o2).compareTo(weights.get(o1));
+			}
+		});
+
+		int size = Math.max(1, Math.min(count, files.size()));
+		List<List<String>> shards = new ArrayList<List<String>>();
+		double[] loads = new double[size];
+		for (int i = 0; i < size; i++) {
+			shards.add(new ArrayList<String>());
+		}
+		for (String file : sorted) {
+			int lightest = 0;
+			for (int i = 1; i < size; i++) {
+				if (loads[i] < loads[lightest]) {
+					lightest = i;
+				}
+			}
+			shards.get(lightest).add(file);
+			loads[lightest] += weights.get(file);
+		}
+		for (List<String> shard : shards) {
+			Collections.sort(shard);
+		}
+		return shards;
+	}
+
+	/**
+	 * Share the duration of a successful shard between its files, in proportion of their weights.
+	 */
+	private static void record(DurationHistory history, String scope, List<String> shard, Map<String, Double> weights, long duration) {
+		if (history == null) {
+			return;
+		}
+		double total = 0;
+		for (String file : shard) {
+			total += weights.get(file);
+		}
+		for (String file : shard) {
+			history.record(scope + file, Math.round(duration * weights.get(file) / total));
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.github.ug_dbg;
+
+import com.github.ug_dbg.json.JSONException;
+import com.github.ug_dbg.json.JSONObject;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dependency graph of the npm packages of a set of working directories (e.g. the packages of a monorepo).
+ * <br>
+ * A package depends on another if the other package name is a key of its 'dependencies', 'devDependencies'
+ * or 'optionalDependencies'. Dependencies on packages outside the set are ignored.
+ * 'peerDependencies' are not ordering edges : the host package is provided by the consumer (e.g. a plugin and its host).
+ * <br>
+ * A dependency cycle (e.g. through 'devDependencies') is broken with a warning, as lerna/pnpm do :
+ * the dependency that closes the cycle is ignored.
+ */
+class PackageGraph {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String[] DEPENDENCY_TYPES = {
+		"dependencies", "devDependencies", "optionalDependencies"
+	};
+
+	/** The package name of each working directory. */
+	private final Map<File, String> names = new LinkedHashMap<File, String>();
+
+	/** The working directory of each package name. */
+	private final Map<String, File> directories = new HashMap<String, File>();
+
+	/** The dependency package names declared by each working directory. */
+	private final Map<File, List<String>> declarations = new HashMap<File, List<String>>();
+
+	/** The dependency working directories of each working directory, without cycles. */
+	private final Map<File, List<File>> dependencies = new HashMap<File, List<File>>();
+
+	private final Log log;
+
+	/**
+	 * Read the package.json files of some working directories.
+	 * @param workingDirs     the working directories
+	 * @param packageJsonFile the package.json file name
+	 * @param log             the maven logger, to warn about the broken cycles
+	 * @throws MojoExecutionException a package.json file could not be read or parsed, or 2 directories declare the same package
+	 */
+	PackageGraph(List<File> workingDirs, String packageJsonFile, Log log) throws MojoExecutionException {
+		this.log = log;
+		for (File workingDir : workingDirs) {
+			File packageJson = new File(workingDir, packageJsonFile);
+			if (! packageJson.isFile()) {
+				this.names.put(workingDir, null);
+				this.declarations.put(workingDir, new ArrayList<String>());
+				continue;
+			}
+
+			JSONObject json;
+			try {
+				json = new JSONObject(FileUtils.readFileToString(packageJson, UTF8));
+			} catch (IOException e) {
+				throw new MojoExecutionException("Error reading [" + packageJson + "]", e);
+			} catch (JSONException e) {
+				throw new MojoExecutionException("Invalid JSON in [" + packageJson + "]", e);
+			}
+
+			String name = json.optString("name", null);
+			this.names.put(workingDir, name);
+			File other = name == null ? null : this.directories.put(name, workingDir);
+			if (other != null) {
+				throw new MojoExecutionException("Package [" + name + "] is declared in both [" + other + "] and [" + workingDir + "]");
+			}
+
+			List<String> declared = new ArrayList<String>();
+			for (String type : DEPENDENCY_TYPES) {
+				JSONObject dependencies = json.optJSONObject(type);
+				if (dependencies != null) {
+					declared.addAll(dependencies.keySet());
+				}
+			}
+			this.declarations.put(workingDir, declared);
+		}
+
+		Set<File> visited = new HashSet<File>();
+		for (File workingDir : workingDirs) {
+			this.resolve(workingDir, new ArrayList<File>(), visited);
+		}
+	}
+
+	/**
+	 * The package name of a working directory.
+	 * @param workingDir the working directory
+	 * @return the 'name' of its package.json, null if none
+	 */
+	String name(File workingDir) {
+		return this.names.get(workingDir);
+	}
+
+	/**
+	 * The working directories whose package a working directory depends on.
+	 * @param workingDir the working directory
+	 * @return the dependencies working directories, in the graph
+	 */
+	List<File> dependencies(File workingDir) {
+		List<File> dependencies = this.dependencies.get(workingDir);
+		return dependencies == null ? new ArrayList<File>() : new ArrayList<File>(dependencies);
+	}
+
+	/**
+	 * Resolve the dependencies of a working directory and of its dependencies (depth first).
+	 * A dependency on a directory of the current path closes a cycle : it is ignored.
+	 * @param workingDir the working directory
+	 * @param path       the working directories that lead to this one
+	 * @param visited    the resolved working directories
+	 */
+	private void resolve(File workingDir, List<File> path, Set<File> visited) {
+		if (! visited.add(workingDir)) {
+			return;
+		}
+		path.add(workingDir);
+		List<File> dependencies = new ArrayList<File>();
+		for (String name : this.declarations.get(workingDir)) {
+			File dependency = this.directories.get(name);
+			if (dependency == null || dependency.equals(workingDir) || dependencies.contains(dependency)) {
+				continue;
+			}
+			if (path.contains(dependency)) {
+				List<File> cycle = new ArrayList<File>(path.subList(path.indexOf(dependency), path.size()));
+				cycle.add(dependency);
+				this.log.warn(
+					"Dependency cycle " + this.describe(cycle) + " : ignoring the dependency of [" + this.name(workingDir) + "] on [" + name + "]"
+				);
+				continue;
+			}
+			dependencies.add(dependency);
+			this.resolve(dependency, path, visited);
+		}
+		this.dependencies.put(workingDir, dependencies);
+		path.remove(path.size() - 1);
+	}
+
+	private String describe(List<File> cycle) {
+		StringBuilder description = new StringBuilder();
+		for (File workingDir : cycle) {
+			String name = this.name(workingDir);
+			description.append(description.length() == 0 ? "" : " -> ").append(name == null ? workingDir.getPath() : name);
+		}
+		return "[" + description + "]";
+	}
+}
@@ -0,0 +1,267 @@
+package com.github.ug_dbg;
+
+import com.github.ug_dbg.json.JSONException;
+import com.github.ug_dbg.json.JSONObject;
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The scripts of a package.json file, to run them directly with the system shell, as npm would,
+ * without paying the npm CLI startup.
+ * <br>
+ * Running a script 'x' runs 'prex', 'x' then 'postx' (if declared), each with the shell ('sh -c' or 'cmd /d /s /c'),
+ * with the working directory and ancestors 'node_modules/.bin' prepended to the PATH, and the npm variables :
+ * <ul>
+ *     <li>npm_lifecycle_event, npm_lifecycle_script, npm_command</li>
+ *     <li>npm_package_json, npm_package_name, npm_package_version</li>
+ *     <li>npm_package_config_*, npm_package_engines_*, npm_package_bin_*</li>
+ *     <li>INIT_CWD, and NODE/npm_node_execpath if node is found in the PATH</li>
+ * </ul>
+ * The npm configuration variables (npm_config_*) are not set.
+ */
+class PackageScripts {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The npm commands that run a script, followed by the script name. */
+	private static final List<String> RUN_COMMANDS = Arrays.asList("run", "run-script", "rum", "urn");
+
+	/** The npm commands that are shortcuts to run the script of the same name. */
+	private static final List<String> SCRIPT_COMMANDS = Arrays.asList("test", "t", "tst", "start", "stop", "restart");
+
+	/** The package.json fields whose content is exported as npm_package_* variables. */
+	private static final String[] EXPORTED_FIELDS = {"config", "engines", "bin"};
+
+	private final File workingDir;
+	private final File packageJson;
+	private final JSONObject json;
+	private final JSONObject scripts;
+
+	/**
+	 * Read the scripts of a package.json file.
+	 * @param workingDir      the working directory
+	 * @param packageJsonFile the package.json file name
+	 * @throws MojoExecutionException the package.json file could not be read or parsed
+	 */
+	PackageScripts(File workingDir, String packageJsonFile) throws MojoExecutionException {
+		this.workingDir = workingDir.getAbsoluteFile();
+		this.packageJson = new File(this.workingDir, packageJsonFile);
+		if (! this.packageJson.isFile()) {
+			this.json = new JSONObject();
+		} else {
+			try {
+				this.json = new JSONObject(FileUtils.readFileToString(this.packageJson, UTF8));
+			} catch (IOException e) {
+				throw new MojoExecutionException("Error reading [" + this.packageJson + "]", e);
+			} catch (JSONException e) {
+				throw new MojoExecutionException("Invalid JSON in [" + this.packageJson + "]", e);
+			}
+		}
+		JSONObject scripts = this.json.optJSONObject("scripts");
+		this.scripts = scripts == null ? new JSONObject() : scripts;
+	}
+
+	/**
+	 * The script run of an npm command line, if it can run directly.
+	 * <br>
+	 * The command must run a declared script ('run x', 'run-script x', 'test', 'start'...).
+	 * Any other argument must follow '--' : the npm options are not supported.
+	 * @param arguments the npm arguments (e.g. ['run', 'build', '--', '--prod'])
+	 * @return the script run, null if the command must run with npm
+	 */
+	Run run(List<String> arguments) {
+		if (arguments.isEmpty()) {
+			return null;
+		}
+
+		String command = arguments.get(0);
+		int next;
+		String script;
+		if (RUN_COMMANDS.contains(command) && arguments.size() > 1) {
+			script = arguments.get(1);
+			next = 2;
+		} else if (SCRIPT_COMMANDS.contains(command)) {
+			script = command.startsWith("t") ? "test" : command;
+			next = 1;
+		} else {
+			return null;
+		}
+
+		if (! this.scripts.has(script) || (arguments.size() > next && ! "--".equals(arguments.get(next)))) {
+			return null;
+		}
+		List<String> args = new ArrayList<String>();
+		for (String argument : arguments.subList(Math.min(next + 1, arguments.size()), arguments.size())) {
+			args.add(StringUtils.removeEnd(StringUtils.removeStart(argument, "\""), "\""));
+		}
+		return new Run(script, args);
+	}
+
+	/**
+	 * A script run : the script, with its 'pre' and 'post' hooks.
+	 */
+	class Run {
+		private final String script;
+		private final List<String> args;
+
+		private Run(String script, List<String> args) {
+			this.script = script;
+			this.args = args;
+		}
+
+		/**
+		 * The events to run, in order : 'prex', 'x', 'postx'. Only the declared hooks are returned.
+		 */
+		List<String> events() {
+			List<String> events = new ArrayList<String>();
+			if (PackageScripts.this.scripts.has("pre" + this.script)) {
+				events.add("pre" + this.script);
+			}
+			events.add(this.script);
+			if (PackageScripts.this.scripts.has("post" + this.script)) {
+				events.add("post" + this.script);
+			}
+			return events;
+		}
+
+		/**
+		 * The shell command line of an event. The arguments are only appended to the script itself, not its hooks.
+		 */
+		CommandLine commandLine(String event) {
+			StringBuilder script = new StringBuilder(PackageScripts.this.scripts.getString(event));
+			if (event.equals(this.script)) {
+				for (String arg : this.args) {
+					script.append(' ').append(quote(arg));
+				}
+			}
+
+			CommandLine cmdLine;
+			if (AbstractMojo.isWindows()) {
+				cmdLine = new CommandLine(StringUtils.defaultIfBlank(System.getenv("ComSpec"), "cmd.exe"));
+				cmdLine.addArgument("/d").addArgument("/s").addArgument("/c");
+			} else {
+				cmdLine = new CommandLine("sh").addArgument("-c");
+			}
+			return cmdLine.addArgument(script.toString(), false);
+		}
+
+		/**
+		 * The environment variables of an event, to add to the maven environment.
+		 * @param npmHome the directory that contains the npm executable, added to the PATH. Can be null.
+		 */
+		Map<String, String> environment(String event, File npmHome) {
+			Map<String, String> environment = new LinkedHashMap<String, String>();
+			List<String> path = new ArrayList<String>();
+			for (File dir = PackageScripts.this.workingDir; dir != null; dir = dir.getParentFile()) {
+				File bin = new File(new File(dir, "node_modules"), ".bin");
+				if (bin.isDirectory()) {
+					path.add(bin.getAbsolutePath());
+				}
+			}
+			if (npmHome != null) {
+				path.add(npmHome.getAbsolutePath());
+			}
+
+			String pathName = pathVariable();
+			String systemPath = System.getenv(pathName);
+			if (StringUtils.isNotEmpty(systemPath)) {
+				path.add(systemPath);
+			}
+			environment.put(pathName, StringUtils.join(path, File.pathSeparator));
+
+			environment.put("npm_lifecycle_event", event);
+			environment.put("npm_lifecycle_script", PackageScripts.this.scripts.getString(event));
+			environment.put("npm_command", "run-script");
+			environment.put("INIT_CWD", PackageScripts.this.workingDir.getAbsolutePath());
+			environment.put("npm_package_json", PackageScripts.this.packageJson.getAbsolutePath());
+			JSONObject json = PackageScripts.this.json;
+			if (json.has("name")) {
+				environment.put("npm_package_name", json.optString("name"));
+			}
+			if (json.has("version")) {
+				environment.put("npm_package_version", json.optString("version"));
+			}
+			for (String field : EXPORTED_FIELDS) {
+				Object value = json.opt(field);
+				if (value != null) {
+					export(environment, "npm_package_" + field, value);
+				}
+			}
+
+			File node = node(path);
+			if (node != null) {
+				environment.put("NODE", node.getAbsolutePath());
+				environment.put("npm_node_execpath", node.getAbsolutePath());
+			}
+			return environment;
+		}
+
+		@Override
+		public String toString() {
+			return StringUtils.join(this.events(), ",");
+		}
+	}
+
+	/**
+	 * Export a package.json value, as npm does : objects are flattened, non alphanumeric characters are replaced by '_'.
+	 */
+	private static void export(Map<String, String> environment, String name, Object value) {
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			for (String key : object.keySet()) {
+				export(environment, name + "_" + key.replaceAll("[^a-zA-Z0-9_]", "_"), object.get(key));
+			}
+		} else if (value != JSONObject.NULL) {
+			environment.put(name, String.valueOf(value));
+		}
+	}
+
+	/**
+	 * Quote a script argument for the shell, as npm does.
+	 */
+	private static String quote(String arg) {
+		if (AbstractMojo.isWindows()) {
+			return arg.matches("[\\w@%+=:,./\\\\-]+") ? arg : "\"" + arg.replace("\"", "\\\"") + "\"";
+		}
+		return arg.matches("[\\w@%+=:,./-]+") ? arg : "'" + arg.replace("'", "'\\''") + "'";
+	}
+
+	/**
+	 * The name of the PATH environment variable ('Path' on Windows, most of the time).
+	 */
+	private static String pathVariable() {
+		for (String name : System.getenv().keySet()) {
+			if ("PATH".equalsIgnoreCase(name)) {
+				return name;
+			}
+		}
+		return "PATH";
+	}
+
+	/**
+	 * The node executable, in the PATH.
+	 * @return the node executable, null if not found
+	 */
+	private static File node(List<String> path) {
+		String name = AbstractMojo.isWindows() ? "node.exe" : "node";
+		for (String entry : path) {
+			for (String dir : StringUtils.split(entry, File.pathSeparator)) {
+				File node = new File(dir, name);
+				if (node.isFile() && node.canExecute()) {
+					return node;
+				}
+			}
+		}
+		return null;
+	}
+}
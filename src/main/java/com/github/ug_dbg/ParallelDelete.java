@@ -0,0 +1,201 @@
+package com.github.ug_dbg;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delete file trees concurrently, on a fork/join pool.
+ * <br>
+ * {@link java.nio.file.Files#walkFileTree} visits a tree on a single thread :
+ * here, each directory is listed by a task that forks 1 sub-task per sub-directory and deletes its files.
+ * This suits large trees of small files, such as node_modules.
+ * <br>
+ * Symbolic links are deleted, never followed. Errors do not stop the deletion : they are collected in the {@link Report}.
+ */
+class ParallelDelete {
+
+	/** Do not keep more errors than this in a report. */
+	private static final int MAX_ERRORS = 20;
+
+	private final int threads;
+
+	/**
+	 * Create a parallel delete engine.
+	 * @param threads the number of threads. If < 1, use the number of available processors.
+	 */
+	ParallelDelete(int threads) {
+		this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+	}
+
+	/** The deletion report : deleted files count, bytes reclaimed, elapsed time and errors. */
+	static class Report {
+		private final AtomicLong files = new AtomicLong();
+		private final AtomicLong directories = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final List<IOException> errors = Collections.synchronizedList(new ArrayList<IOException>());
+		private final AtomicLong errorCount = new AtomicLong();
+		private long elapsed;
+
+		long files() {
+			return this.files.get();
+		}
+
+		long directories() {
+			return this.directories.get();
+		}
+
+		long bytes() {
+			return this.bytes.get();
+		}
+
+		long elapsedMillis() {
+			return this.elapsed;
+		}
+
+		long errorCount() {
+			return this.errorCount.get();
+		}
+
+		List<IOException> errors() {
+			return this.errors;
+		}
+
+		private void error(IOException e) {
+			if (this.errorCount.incrementAndGet() <= MAX_ERRORS) {
+				this.errors.add(e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return this.files() + " file(s), "
+				+ this.directories() + " directory(ies), "
+				+ (this.bytes() / 1024) + " KB in "
+				+ this.elapsed + " ms"
+				+ (this.errorCount() == 0 ? "" : ", " + this.errorCount() + " error(s)");
+		}
+	}
+
+	/**
+	 * Delete a file or a directory tree.
+	 * @param path the file or directory to delete
+	 * @return the deletion report
+	 */
+	Report delete(Path path) {
+		Report report = new Report();
+		long start = System.currentTimeMillis();
+
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(
+				path,
+				BasicFileAttributes.class,
+				LinkOption.NOFOLLOW_LINKS
+			);
+			if (attributes.isDirectory()) {
+				pool.invoke(new DeleteTask(path, report));
+			} else {
+				deleteFile(path, attributes.size(), report);
+			}
+		} catch (NoSuchFileException e) {
+			// Nothing to delete
+		} catch (IOException e) {
+			report.error(e);
+		} finally {
+			pool.shutdown();
+		}
+
+		report.elapsed = System.currentTimeMillis() - start;
+		return report;
+	}
+
+	private static void deleteFile(Path file, long size, Report report) {
+		try {
+			forceDelete(file);
+			report.files.incrementAndGet();
+			report.bytes.addAndGet(size);
+		} catch (IOException e) {
+			report.error(e);
+		}
+	}
+
+	/**
+	 * Delete a file or an empty directory. If access is denied (e.g. a read-only file on Windows), set writable and retry.
+	 * @param path the path to delete
+	 * @throws IOException the deletion failed
+	 */
+	private static void forceDelete(Path path) throws IOException {
+		try {
+			Files.deleteIfExists(path);
+		} catch (AccessDeniedException e) {
+			if (! path.toFile().setWritable(true)) {
+				throw e;
+			}
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/** Delete the files of a directory, fork 1 task per sub-directory, then delete the directory. */
+	private static class DeleteTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+		private final Report report;
+
+		private DeleteTask(Path directory, Report report) {
+			this.directory = directory;
+			this.report = report;
+		}
+
+		@Override
+		protected void compute() {
+			List<DeleteTask> subTasks = new ArrayList<DeleteTask>();
+			try {
+				DirectoryStream<Path> children = Files.newDirectoryStream(this.directory);
+				try {
+					for (Path child : children) {
+						BasicFileAttributes attributes = Files.readAttributes(
+							child,
+							BasicFileAttributes.class,
+							LinkOption.NOFOLLOW_LINKS
+						);
+						if (attributes.isDirectory()) {
+							DeleteTask subTask = new DeleteTask(child, this.report);
+							subTask.fork();
+							subTasks.add(subTask);
+						} else {
+							deleteFile(child, attributes.size(), this.report);
+						}
+					}
+				} finally {
+					children.close();
+				}
+			} catch (IOException e) {
+				this.report.error(e);
+			}
+
+			for (DeleteTask subTask : subTasks) {
+				subTask.join();
+			}
+
+			try {
+				forceDelete(this.directory);
+				this.report.directories.incrementAndGet();
+			} catch (IOException e) {
+				this.report.error(e);
+			}
+		}
+	}
+}
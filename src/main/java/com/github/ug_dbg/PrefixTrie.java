@@ -0,0 +1,154 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.logging.Level;
+
+/**
+ * A case insensitive trie of line prefixes (e.g. 'npm ERR', 'WARNING') associated to a log level.
+ * <br>
+ * {@link #match(CharSequence)} classifies a line in a single pass, without any allocation :
+ * the leading whitespaces are skipped by index and all the prefixes are matched at once.
+ * <br>
+ * If all the prefixes are ASCII, {@link #match(byte[], int)} classifies a line before it is even decoded.
+ * <br>
+ * The trie is not modified once built : it can be shared between threads.
+ */
+class PrefixTrie {
+	private final Node root = new Node();
+	private boolean ascii = true;
+
+	/**
+	 * Add some prefixes. If a prefix is already in the trie, the new level replaces the previous one.
+	 * @param prefixes the prefixes to add. Leading/trailing whitespaces are ignored. Can be null.
+	 * @param level    the log level of the lines that start with any of these prefixes
+	 * @return the current trie
+	 */
+	PrefixTrie add(String[] prefixes, Level level) {
+		if (prefixes == null) {
+			return this;
+		}
+		for (String prefix : prefixes) {
+			this.add(prefix, level);
+		}
+		return this;
+	}
+
+	/**
+	 * Add a prefix. If the prefix is already in the trie, the new level replaces the previous one.
+	 * @param prefix the prefix to add. Leading/trailing whitespaces are ignored. Can be null.
+	 * @param level  the log level of the lines that start with the prefix
+	 * @return the current trie
+	 */
+	PrefixTrie add(String prefix, Level level) {
+		String trimmed = StringUtils.trim(prefix);
+		if (StringUtils.isEmpty(trimmed)) {
+			return this;
+		}
+
+		Node node = this.root;
+		for (int i = 0; i < trimmed.length(); i++) {
+			char c = Character.toLowerCase(trimmed.charAt(i));
+			this.ascii &= c < 0x80;
+			node = node.getOrCreate(c);
+		}
+		node.level = level;
+		return this;
+	}
+
+	/**
+	 * Find the level of the longest prefix the line starts with, leading whitespaces excluded.
+	 * @param line the line to classify
+	 * @return the level of the longest matching prefix, null if no prefix matches
+	 */
+	Level match(CharSequence line) {
+		int length = line.length();
+		int i = 0;
+		while (i < length && Character.isWhitespace(line.charAt(i))) {
+			i++;
+		}
+
+		Level match = null;
+		Node node = this.root;
+		for (; i < length; i++) {
+			node = node.get(Character.toLowerCase(line.charAt(i)));
+			if (node == null) {
+				break;
+			}
+			if (node.level != null) {
+				match = node.level;
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * Are all the prefixes ASCII ? If so, {@link #match(byte[], int)} can be used on encoded lines (UTF-8, ISO-8859-1...).
+	 * @return true if all the prefixes are ASCII
+	 */
+	boolean isAscii() {
+		return this.ascii;
+	}
+
+	/**
+	 * Find the level of the longest prefix an encoded line starts with, leading whitespaces excluded.
+	 * Only ASCII is lower cased : use it only if {@link #isAscii()}.
+	 * @param line   the line bytes, in an ASCII compatible encoding
+	 * @param length the line length
+	 * @return the level of the longest matching prefix, null if no prefix matches
+	 */
+	Level match(byte[] line, int length) {
+		int i = 0;
+		while (i < length && (line[i] == ' ' || line[i] == '\t' || line[i] == '\f' || line[i] == 0x0B)) {
+			i++;
+		}
+
+		Level match = null;
+		Node node = this.root;
+		for (; i < length; i++) {
+			int c = line[i] & 0xFF;
+			node = node.get((char) (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c));
+			if (node == null) {
+				break;
+			}
+			if (node.level != null) {
+				match = node.level;
+			}
+		}
+		return match;
+	}
+
+	/** A trie node. A few children at most : arrays and linear search are enough. */
+	private static class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private Level level;
+
+		private Node get(char key) {
+			for (int i = 0; i < this.keys.length; i++) {
+				if (this.keys[i] == key) {
+					return this.children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node getOrCreate(char key) {
+			Node child = this.get(key);
+			if (child != null) {
+				return child;
+			}
+
+			int size = this.keys.length;
+			char[] keys = new char[size + 1];
+			Node[] children = new Node[size + 1];
+			System.arraycopy(this.keys, 0, keys, 0, size);
+			System.arraycopy(this.children, 0, children, 0, size);
+			keys[size] = key;
+			children[size] = new Node();
+			this.keys = keys;
+			this.children = children;
+			return children[size];
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.github.ug_dbg;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * A process whose destruction terminates the whole process tree (e.g. npm → node → webpack/esbuild workers),
+ * with an optional timeout and hang detection (no output for a while).
+ * <br>
+ * Destroying the process (cancelled maven task, interrupted or ended build, timeout, hang) :
+ * <ol>
+ *     <li>collects the process descendants, while they are still attached to the process</li>
+ *     <li>asks the process and its descendants to terminate (SIGTERM)</li>
+ *     <li>waits for them, {@link #GRACE_PERIOD} ms at most, then kills the survivors (SIGKILL)</li>
+ * </ol>
+ * A timeout or a hang does not wait on the shared watchdog thread : the survivors are killed by a scheduled task,
+ * so the other processes are still checked meanwhile.
+ * The executor destroys the process it launched : the process must be wrapped when it is launched (see {@link CommandExecutor}).
+ */
+class ProcessTree extends Process {
+
+	/** How long to wait for the processes to terminate before killing them, in milliseconds. */
+	private static final long GRACE_PERIOD = 3000;
+
+	/** How often the timeouts are checked, in milliseconds. */
+	private static final long CHECK_INTERVAL = 1000;
+
+	/** The scheduler of the timeout checks, shared by all the processes. */
+	private static final ScheduledExecutorService WATCHDOG = watchdog();
+
+	private final Process process;
+	private final long start = System.nanoTime();
+	private volatile ScheduledFuture<?> check;
+	private volatile boolean destroyed;
+	private volatile String reason;
+
+	/**
+	 * Wrap a launched process.
+	 * @param process the launched process
+	 */
+	ProcessTree(Process process) {
+		this.process = process;
+	}
+
+	/**
+	 * Destroy the process tree if it runs for too long, or if it does not write anything for too long.
+	 * @param timeout     the max duration of the process, in seconds. No timeout if &lt;= 0.
+	 * @param hangTimeout the max duration without output, in seconds. No hang detection if &lt;= 0.
+	 * @param outputs     the handlers of the process output, for the hang detection
+	 * @return this process
+	 */
+	ProcessTree watch(final long timeout, final long hangTimeout, final LogHandler... outputs) {
+		if (timeout <= 0 && (hangTimeout <= 0 || outputs.length == 0)) {
+			return this;
+		}
+
+		this.check = WATCHDOG.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				ProcessTree.this.check(timeout, hangTimeout, outputs);
+			}
+		}, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * Why the process tree was destroyed.
+	 * @return 'timed out after...', 'hung...', 'cancelled', or null if the process was not destroyed
+	 */
+	String reason() {
+		return this.reason != null ? this.reason : this.destroyed ? "cancelled" : null;
+	}
+
+	private void check(long timeout, long hangTimeout, LogHandler... outputs) {
+		if (! this.process.isAlive()) {
+			if (this.check != null) {
+				this.check.cancel(false);
+			}
+			return;
+		}
+
+		long now = System.nanoTime();
+		if (timeout > 0 && now - this.start > TimeUnit.SECONDS.toNanos(timeout)) {
+			this.reason = "timed out after " + timeout + "s";
+		} else if (hangTimeout > 0) {
+			long lastOutput = this.start;
+			for (LogHandler output : outputs) {
+				lastOutput = Math.max(lastOutput, output.lastOutput());
+			}
+			if (now - lastOutput > TimeUnit.SECONDS.toNanos(hangTimeout)) {
+				this.reason = "hung : no output for " + hangTimeout + "s";
+			}
+		}
+
+		if (this.reason != null) {
+			this.destroyLater();
+		}
+	}
+
+	/**
+	 * Terminate the process and its descendants, then schedule the kill of the survivors after the grace period.
+	 * Unlike {@link #destroy()}, it does not block the watchdog thread.
+	 */
+	private void destroyLater() {
+		this.destroyed = true;
+		if (this.check != null) {
+			this.check.cancel(false);
+		}
+
+		final List<ProcessHandle> tree = terminate(this.process.toHandle());
+		WATCHDOG.schedule(new Runnable() {
+			public void run() {
+				kill(tree);
+			}
+		}, GRACE_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Terminate the process and its descendants, then kill the survivors after the grace period.
+	 */
+	@Override
+	public void destroy() {
+		this.destroyed = true;
+		if (this.check != null) {
+			this.check.cancel(false);
+		}
+
+		destroy(this.process.toHandle());
+	}
+
+	/**
+	 * Terminate a process and its descendants, then kill the survivors after the grace period.
+	 * @param root the process to terminate with its descendants
+	 */
+	static void destroy(ProcessHandle root) {
+		List<ProcessHandle> tree = terminate(root);
+		List<CompletableFuture<ProcessHandle>> exits = new ArrayList<CompletableFuture<ProcessHandle>>();
+		for (ProcessHandle handle : tree) {
+			exits.add(handle.onExit());
+		}
+
+		// The executor calls destroy() when its thread is interrupted : wait anyway, and restore the interruption
+		boolean interrupted = Thread.interrupted();
+		try {
+			CompletableFuture.allOf(exits.toArray(new CompletableFuture<?>[exits.size()])).get(GRACE_PERIOD, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			interrupted = true;
+		} catch (ExecutionException e) {
+			// Cannot happen : onExit does not complete exceptionally
+		} catch (TimeoutException e) {
+			// Kill the survivors below
+		} finally {
+			kill(tree);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Collect the descendants of a process, while they are still attached to it, then ask them all to terminate.
+	 * @param root the process to terminate with its descendants
+	 * @return the process and its descendants
+	 */
+	private static List<ProcessHandle> terminate(ProcessHandle root) {
+		List<ProcessHandle> tree = new ArrayList<ProcessHandle>(root.descendants().collect(Collectors.toList()));
+		tree.add(0, root);
+		for (ProcessHandle handle : tree) {
+			if (handle.isAlive()) {
+				handle.destroy();
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Kill the processes that survived the termination.
+	 * @param tree the terminated processes
+	 */
+	private static void kill(List<ProcessHandle> tree) {
+		for (ProcessHandle handle : tree) {
+			if (handle.isAlive()) {
+				handle.destroyForcibly();
+			}
+		}
+	}
+
+	@Override
+	public Process destroyForcibly() {
+		this.destroy();
+		return this;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return this.process.getOutputStream();
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return this.process.getInputStream();
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		return this.process.getErrorStream();
+	}
+
+	@Override
+	public int waitFor() throws InterruptedException {
+		return this.process.waitFor();
+	}
+
+	@Override
+	public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.process.waitFor(timeout, unit);
+	}
+
+	@Override
+	public int exitValue() {
+		return this.process.exitValue();
+	}
+
+	@Override
+	public boolean isAlive() {
+		return this.process.isAlive();
+	}
+
+	@Override
+	public long pid() {
+		return this.process.pid();
+	}
+
+	@Override
+	public ProcessHandle toHandle() {
+		return this.process.toHandle();
+	}
+
+	private static ScheduledExecutorService watchdog() {
+		ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "npm-process-watchdog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		watchdog.setRemoveOnCancelPolicy(true);
+		return watchdog;
+	}
+}
@@ -0,0 +1,173 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The CPU and memory budget of the npm/ng processes of the build, shared by all the modules of a parallel build ('-T') :
+ * <ul>
+ *     <li>at most 'slots' processes run at the same time : the others wait for a slot (JVM-wide semaphore)</li>
+ *     <li>each node process gets an equal share of the physical memory ('NODE_OPTIONS=--max-old-space-size'),
+ *     instead of assuming it owns the machine</li>
+ *     <li>the processes can run with a lower priority ('nice'), so the maven threads stay responsive</li>
+ * </ul>
+ * The slot count of the first execution that sets one is used for the whole build :
+ * an execution that sets another one gets a warning (once per ignored value).
+ */
+class ResourceGovernor {
+
+	/** The share of the physical memory given to the node processes, the rest is for maven and the system. */
+	private static final double MEMORY_FRACTION = 0.75;
+
+	/** The node heap lower bound, in megabytes. */
+	private static final long MIN_OLD_SPACE = 512;
+
+	private static final String NODE_OPTIONS = "NODE_OPTIONS";
+	private static final String MAX_OLD_SPACE = "--max-old-space-size";
+
+	/** The JVM-wide process slots, null until an execution sets a slot count. */
+	private static Semaphore slots;
+	private static int slotCount;
+
+	/** The ignored slot counts, already warned about. */
+	private static final Set<Integer> IGNORED = new HashSet<Integer>();
+
+	private final boolean nodeMemory;
+	private final int nice;
+	private final Log log;
+
+	/** The slots this governor acquired a slot from, null if none. */
+	private Semaphore acquired;
+
+	/**
+	 * Create a resource governor.
+	 * @param maxProcesses the max number of concurrent processes. No limit if &lt;= 0, unless already set by another execution.
+	 * @param nodeMemory   if true, set the node max old space size of each process
+	 * @param nice         the niceness increment of the processes. Not applied if &lt;= 0.
+	 * @param log          the maven logger
+	 */
+	ResourceGovernor(int maxProcesses, boolean nodeMemory, int nice, Log log) {
+		this.nodeMemory = nodeMemory;
+		this.nice = nice;
+		this.log = log;
+		synchronized (ResourceGovernor.class) {
+			if (slots == null && maxProcesses > 0) {
+				slots = new Semaphore(maxProcesses, true);
+				slotCount = maxProcesses;
+			} else if (slots != null && maxProcesses > 0 && maxProcesses != slotCount && IGNORED.add(maxProcesses)) {
+				log.warn(
+					"The process slot count is already [" + slotCount + "] for the whole build : "
+					+ "ignoring 'npm.maxProcesses' [" + maxProcesses + "]"
+				);
+			}
+		}
+	}
+
+	/**
+	 * Wait for a process slot. Call {@link #release()} once the process is done.
+	 * @param command the command that waits, for the log
+	 * @throws InterruptedException interrupted while waiting
+	 */
+	void acquire(String command) throws InterruptedException {
+		Semaphore slots = slots();
+		if (slots == null) {
+			return;
+		}
+		if (! slots.tryAcquire()) {
+			this.log.info("Waiting for a process slot (" + slotCount + " max) to execute [" + command + "]");
+			slots.acquire();
+		}
+		this.acquired = slots;
+	}
+
+	/**
+	 * Release the process slot acquired by {@link #acquire(String)}.
+	 */
+	void release() {
+		if (this.acquired != null) {
+			this.acquired.release();
+			this.acquired = null;
+		}
+	}
+
+	/**
+	 * Add the node memory budget to the environment of a process, unless the max old space size is already set.
+	 * @param environment the process environment variables, to add to the maven environment. Can be null.
+	 * @return the environment variables, with NODE_OPTIONS if required. Null if there is no variable.
+	 */
+	Map<String, String> environment(Map<String, String> environment) {
+		if (! this.nodeMemory) {
+			return environment;
+		}
+
+		String nodeOptions = environment != null && environment.containsKey(NODE_OPTIONS)
+			? environment.get(NODE_OPTIONS)
+			: System.getenv(NODE_OPTIONS);
+		if (StringUtils.contains(nodeOptions, MAX_OLD_SPACE)) {
+			return environment;
+		}
+		long maxOldSpace = maxOldSpace();
+		if (maxOldSpace <= 0) {
+			return environment;
+		}
+
+		Map<String, String> budget = environment == null ? new HashMap<String, String>() : new HashMap<String, String>(environment);
+		String option = MAX_OLD_SPACE + "=" + maxOldSpace;
+		budget.put(NODE_OPTIONS, StringUtils.isBlank(nodeOptions) ? option : nodeOptions.trim() + " " + option);
+		return budget;
+	}
+
+	/**
+	 * Run a command line with a lower priority, if 'nice' is set and available (not on Windows).
+	 * @param cmdLine    the command line
+	 * @param workingDir the working directory, to resolve 'nice'
+	 * @return 'nice -n N cmdLine', or cmdLine
+	 */
+	CommandLine commandLine(CommandLine cmdLine, File workingDir) {
+		if (this.nice <= 0) {
+			return cmdLine;
+		}
+		File nice = AbstractMojo.isWindows() ? null : Executables.resolve("nice", workingDir, null);
+		if (nice == null) {
+			this.log.debug("'nice' is not available : [" + cmdLine + "] runs with the maven priority");
+			return cmdLine;
+		}
+
+		CommandLine niced = new CommandLine(nice.getAbsolutePath()).addArgument("-n").addArgument(String.valueOf(this.nice));
+		for (String argument : cmdLine.toStrings()) {
+			niced.addArgument(argument, false);
+		}
+		return niced;
+	}
+
+	/**
+	 * The node max old space size : the physical memory share, divided by the process slots (or the processors if no slot count).
+	 * @return the max old space size in megabytes, -1 if the physical memory size is not available
+	 */
+	private static long maxOldSpace() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (! (os instanceof com.sun.management.OperatingSystemMXBean)) {
+			return -1;
+		}
+		long physicalMemory = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+		int count;
+		synchronized (ResourceGovernor.class) {
+			count = slotCount > 0 ? slotCount : Runtime.getRuntime().availableProcessors();
+		}
+		return Math.max(MIN_OLD_SPACE, (long) (physicalMemory * MEMORY_FRACTION / count / (1024 * 1024)));
+	}
+
+	private static synchronized Semaphore slots() {
+		return slots;
+	}
+}
@@ -0,0 +1,305 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecuteResultHandler;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Goal which starts a long-running npm/ng command (e.g. 'npm start', 'ng serve') in the background
+ * and waits until it is ready : its TCP port accepts connections and/or it logged a line that matches a pattern.
+ * <br>
+ * The server PID is recorded in a file. It keeps running for the next phases (e.g. integration-test),
+ * until the {@link StopServerMojo 'stop-server'} goal, or the end of the build.
+ * <br>
+ * A server that is already running (same project and id, or a live process in the PID file) is reused.
+ */
+@Mojo(name = "start-server", threadSafe = true, defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
+public class StartServerMojo extends AbstractMojo {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** How often the readiness is checked, in milliseconds. */
+	private static final long PROBE_INTERVAL = 250;
+
+	/** The TCP connection timeout of the readiness probe, in milliseconds. */
+	private static final int CONNECT_TIMEOUT = 1000;
+
+	/** The servers started by this JVM, by project and server id. */
+	private static final Map<String, ProcessTree> SERVERS = new ConcurrentHashMap<String, ProcessTree>();
+
+	/** The server id, to start several servers in a project. Optional. If not specified, 'server' will be used. */
+	@Parameter(property = "server.id", defaultValue = "server")
+	private String id;
+
+	/** The executable of the server command : 'npm' or 'ng'. Optional. If not specified, 'npm' will be used. */
+	@Parameter(property = "server.executable", defaultValue = "npm")
+	private String executable;
+
+	/** The command to execute, such as 'start' (npm) or 'serve' (ng). Required. */
+	@Parameter(property = "server.command", required = true)
+	private String command;
+
+	/** The arguments to pass to the command. Optional. */
+	@Parameter(property = "server.args")
+	private String[] args;
+
+	/** The working directory. Optional. If not specified, basedir will be used. */
+	@Parameter(property = "npm.workingDir", defaultValue = "${basedir}")
+	private File workingDir;
+
+	/** The directory that contains npm executable. Optional. */
+	@Parameter(property = "npm.home")
+	private File npmHome;
+
+	/** The directory that contains ng executable. Optional. If not specified, ng is resolved as for 'exec-ng'. */
+	@Parameter(property = "ng.home")
+	private File ngHome;
+
+	/** The TCP port the server is ready on, when it accepts connections. Optional. */
+	@Parameter(property = "server.port", defaultValue = "0")
+	private int port;
+
+	/** The host of the {@link #port}. Optional. If not specified, 'localhost' will be used. */
+	@Parameter(property = "server.host", defaultValue = "localhost")
+	private String host;
+
+	/** The pattern of the output line the server is ready after (e.g. 'compiled successfully'). Requires the log handler. Optional. */
+	@Parameter(property = "server.readyPattern")
+	private String readyPattern;
+
+	/** How long to wait for the server to be ready, in seconds. The server is then stopped and the build fails. Default is 120. */
+	@Parameter(property = "server.startTimeout", defaultValue = "120")
+	private long startTimeout;
+
+	/** The file where the server PID is recorded. Optional. If not specified, '${project.build.directory}/npm-${server.id}.pid'. */
+	@Parameter(property = "server.pidFile")
+	private File pidFile;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		Pattern pattern = this.readyPattern();
+		File pidFile = pidFile(this.pidFile, this.buildDirectory(), this.id);
+		String key = this.projectId() + ":" + this.id;
+
+		ProcessTree running = SERVERS.get(key);
+		if (running != null && running.isAlive()) {
+			this.getLog().info("Server [" + this.id + "] is already running (PID " + running.pid() + ")");
+			return;
+		}
+		ProcessHandle recorded = readPidFile(pidFile);
+		if (recorded != null) {
+			this.getLog().info("Server [" + this.id + "] is already running (PID " + recorded.pid() + ", from [" + pidFile + "])");
+			return;
+		}
+
+		CommandLine cmdLine = this.getServerCommand().addArgument(this.command);
+		if (this.args != null) {
+			for (String arg : this.args) {
+				for (String parsedArgument : parseArgument(arg)) {
+					cmdLine.addArgument(parsedArgument);
+				}
+			}
+		}
+
+		final CountDownLatch logReady = new CountDownLatch(pattern == null ? 0 : 1);
+		DefaultExecuteResultHandler result = new DefaultExecuteResultHandler();
+		this.getLog().info("Starting server [" + this.id + "] : [" + cmdLine + "] in [" + this.workingDir + "]");
+		ProcessTree server = new CommandExecutor(this, "server " + this.id, this.errorPrefix(), this.warnPrefix(), this.debugPrefix())
+			.start(cmdLine, this.workingDir, pattern, new Runnable() {
+				public void run() {
+					logReady.countDown();
+				}
+			}, result);
+
+		long start = System.nanoTime();
+		try {
+			this.awaitReady(server, result, logReady);
+		} catch (MojoFailureException e) {
+			server.destroy();
+			throw e;
+		}
+
+		SERVERS.put(key, server);
+		writePidFile(pidFile, server.toHandle());
+		this.getLog().info(
+			"Server [" + this.id + "] ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms "
+			+ "(PID " + server.pid() + ", recorded in [" + pidFile + "])"
+		);
+	}
+
+	/**
+	 * Take a server started by this JVM.
+	 * @param key the project id and server id
+	 * @return the server process, null if none
+	 */
+	static ProcessTree take(String key) {
+		return SERVERS.remove(key);
+	}
+
+	/**
+	 * The PID file of a server.
+	 * @param pidFile        the configured PID file. Can be null.
+	 * @param buildDirectory the project build directory
+	 * @param id             the server id
+	 * @return the configured PID file, or the default one
+	 */
+	static File pidFile(File pidFile, File buildDirectory, String id) {
+		return pidFile != null ? pidFile : new File(buildDirectory, "npm-" + id + ".pid");
+	}
+
+	/**
+	 * Read a PID file : the PID and the process start time (epoch millis), to ignore a reused PID.
+	 * @param pidFile the PID file
+	 * @return the recorded process, null if there is no PID file or if the process is not running anymore
+	 */
+	static ProcessHandle readPidFile(File pidFile) {
+		if (! pidFile.isFile()) {
+			return null;
+		}
+		try {
+			List<String> lines = FileUtils.readLines(pidFile, UTF8);
+			Optional<ProcessHandle> process = ProcessHandle.of(Long.parseLong(lines.get(0).trim()));
+			if (! process.isPresent() || ! process.get().isAlive()) {
+				return null;
+			}
+			Optional<Instant> startInstant = process.get().info().startInstant();
+			if (lines.size() > 1 && startInstant.isPresent() && startInstant.get().toEpochMilli() != Long.parseLong(lines.get(1).trim())) {
+				return null;
+			}
+			return process.get();
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// Empty or invalid PID file
+			return null;
+		}
+	}
+
+	private static void writePidFile(File pidFile, ProcessHandle process) throws MojoExecutionException {
+		Optional<Instant> startInstant = process.info().startInstant();
+		String content = process.pid() + "\n" + (startInstant.isPresent() ? startInstant.get().toEpochMilli() + "\n" : "");
+		try {
+			FileUtils.forceMkdirParent(pidFile);
+			FileUtils.writeStringToFile(pidFile, content, UTF8);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error writing the PID file [" + pidFile + "]", e);
+		}
+	}
+
+	/**
+	 * Wait until the server port accepts connections and the ready line was logged.
+	 * @throws MojoFailureException the server exited or was not ready in time
+	 */
+	private void awaitReady(ProcessTree server, DefaultExecuteResultHandler result, CountDownLatch logReady)
+		throws MojoExecutionException, MojoFailureException {
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.startTimeout);
+		try {
+			while (true) {
+				if (result.hasResult()) {
+					throw new MojoFailureException(
+						"Server [" + this.id + "] exited with code " + result.getExitValue() + " before being ready",
+						result.getException()
+					);
+				}
+				if (logReady.getCount() == 0 && (this.port <= 0 || this.isPortOpen())) {
+					return;
+				}
+				if (System.nanoTime() > deadline) {
+					throw new MojoFailureException("Server [" + this.id + "] not ready after " + this.startTimeout + "s");
+				}
+				if (logReady.getCount() > 0) {
+					logReady.await(PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+				} else {
+					result.waitFor(PROBE_INTERVAL);
+				}
+			}
+		} catch (InterruptedException e) {
+			server.destroy();
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while waiting for server [" + this.id + "]", e);
+		}
+	}
+
+	private boolean isPortOpen() {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(this.host, this.port), CONNECT_TIMEOUT);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	private Pattern readyPattern() throws MojoExecutionException {
+		if (StringUtils.isEmpty(this.readyPattern)) {
+			if (this.port <= 0) {
+				this.getLog().warn("No 'server.port' nor 'server.readyPattern' : server [" + this.id + "] is considered ready once started");
+			}
+			return null;
+		}
+		if (! this.useLogHandler()) {
+			throw new MojoExecutionException("'server.readyPattern' requires the log handler ('log.handler')");
+		}
+		try {
+			return Pattern.compile(this.readyPattern);
+		} catch (PatternSyntaxException e) {
+			throw new MojoExecutionException("Invalid 'server.readyPattern' [" + this.readyPattern + "]", e);
+		}
+	}
+
+	private boolean isNg() {
+		return "ng".equals(this.executable);
+	}
+
+	private String errorPrefix() {
+		return this.isNg() ? "ERROR" : "npm ERR";
+	}
+
+	private String warnPrefix() {
+		return this.isNg() ? "WARNING" : "npm WARN";
+	}
+
+	private String debugPrefix() {
+		return this.isNg() ? "DEBUG" : "npm notice";
+	}
+
+	private CommandLine getServerCommand() throws MojoExecutionException {
+		if (! this.isNg()) {
+			if (! "npm".equals(this.executable)) {
+				throw new MojoExecutionException("Unsupported 'server.executable' [" + this.executable + "] : 'npm' or 'ng' expected");
+			}
+			return getCommand("npm", this.npmHome);
+		}
+		if (this.ngHome != null) {
+			return getCommand("ng", this.ngHome);
+		}
+		File ng = Executables.resolve("ng", this.workingDir, this.npmHome);
+		return ng == null ? getCommand("ng", null) : Executables.commandLine(ng);
+	}
+}
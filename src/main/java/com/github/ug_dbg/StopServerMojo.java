@@ -0,0 +1,45 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+
+/**
+ * Goal which stops a server started by the {@link StartServerMojo 'start-server'} goal : the server process and its descendants
+ * are terminated (see {@link ProcessTree}).
+ * <br>
+ * The server is found in the current build, or from its PID file (e.g. a server started by a previous build).
+ */
+@Mojo(name = "stop-server", threadSafe = true, defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST)
+public class StopServerMojo extends AbstractMojo {
+
+	/** The id of the server to stop. Optional. If not specified, 'server' will be used. */
+	@Parameter(property = "server.id", defaultValue = "server")
+	private String id;
+
+	/** The file where the server PID is recorded. Optional. If not specified, '${project.build.directory}/npm-${server.id}.pid'. */
+	@Parameter(property = "server.pidFile")
+	private File pidFile;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File pidFile = StartServerMojo.pidFile(this.pidFile, this.buildDirectory(), this.id);
+		ProcessTree server = StartServerMojo.take(this.projectId() + ":" + this.id);
+		ProcessHandle recorded = StartServerMojo.readPidFile(pidFile);
+
+		if (server != null && server.isAlive()) {
+			this.getLog().info("Stopping server [" + this.id + "] (PID " + server.pid() + ")");
+			server.destroy();
+		} else if (recorded != null) {
+			this.getLog().info("Stopping server [" + this.id + "] (PID " + recorded.pid() + ", from [" + pidFile + "])");
+			ProcessTree.destroy(recorded);
+		} else {
+			this.getLog().info("No running server [" + this.id + "] to stop");
+		}
+		FileUtils.deleteQuietly(pidFile);
+	}
+}
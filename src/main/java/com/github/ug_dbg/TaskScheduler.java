@@ -0,0 +1,496 @@
+package com.github.ug_dbg;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run named tasks with dependencies on a bounded worker pool.
+ * <br>
+ * A task is ready as soon as all its dependencies succeeded.
+ * When a worker is free, the ready task with the longest expected path to the end of the graph 
+ * (its expected duration plus the longest expected path of its dependents) is started first,
+ * so the long tasks do not end up running alone at the end. 
+ * The expected durations come from the {@link DurationHistory}, if any : without history, tasks start in insertion order.
+ * Only the process time of the tasks is recorded (see {@link #addProcessTime(long)}) : 
+ * not the time waiting for a process slot, nor the tasks that did not run any process (up-to-date, restored from the cache).
+ * <br>
+ * On the first failure, running tasks are cancelled (interrupted) and no other task is started,
+ * unless the scheduler {@link #setContinueOnFailure continues on failure} : then only the dependents of the failed task are not run.
+ * All the failures are then reported in a single exception.
+ */
+class TaskScheduler {
+
+	/** A task to run. */
+	interface Task {
+		void run() throws MojoExecutionException, MojoFailureException;
+	}
+
+	/** How long to wait for cancelled tasks to terminate, in seconds. */
+	private static final long SHUTDOWN_TIMEOUT = 30;
+
+	/** The process time of the task running on the current worker thread, in milliseconds. Null if no process ran. */
+	private static final ThreadLocal<Long> PROCESS_TIME = new ThreadLocal<Long>();
+
+	private final Map<String, Task> tasks = new LinkedHashMap<String, Task>();
+	private final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+	private final int threads;
+	private final Log log;
+
+	private final Map<String, Long> processDurations = new ConcurrentHashMap<String, Long>();
+
+	private DurationHistory history;
+	private String historyScope;
+	private boolean continueOnFailure;
+
+	/**
+	 * Create a task scheduler.
+	 * @param threads the maximum number of tasks to run concurrently. If < 1, use the number of available processors.
+	 * @param log     the maven logger
+	 */
+	TaskScheduler(int threads, Log log) {
+		this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+		this.log = log;
+	}
+
+	/**
+	 * Add a task.
+	 * @param name      the task name, that other tasks can depend on
+	 * @param task      the task to run
+	 * @param dependsOn the names of the tasks that must succeed before this one can start
+	 */
+	void add(String name, Task task, Collection<String> dependsOn) {
+		this.tasks.put(name, task);
+		this.dependencies.put(name, new LinkedHashSet<String>(dependsOn));
+	}
+
+	/**
+	 * Use a duration history to start the longest expected tasks first, and record the actual durations.
+	 * @param history the duration history. Can be null.
+	 * @param scope   the history key prefix of the tasks (e.g. the command line)
+	 */
+	void setHistory(DurationHistory history, String scope) {
+		this.history = history;
+		this.historyScope = scope;
+	}
+
+	/**
+	 * Run the other tasks to completion when a task fails, instead of cancelling them. 
+	 * @param continueOnFailure if true, a failure does not cancel the running tasks nor prevent the ready tasks from starting
+	 */
+	void setContinueOnFailure(boolean continueOnFailure) {
+		this.continueOnFailure = continueOnFailure;
+	}
+
+	/**
+	 * Run all the tasks, in dependency order, and wait for them to complete.
+	 * @throws MojoExecutionException invalid dependencies, interruption or any task threw a MojoExecutionException
+	 * @throws MojoFailureException   any task failed
+	 */
+	void execute() throws MojoExecutionException, MojoFailureException {
+		this.checkDependencies();
+
+		Map<String, Integer> remaining = new HashMap<String, Integer>();
+		Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+		for (String name : this.tasks.keySet()) {
+			remaining.put(name, this.dependencies.get(name).size());
+			dependents.put(name, new ArrayList<String>());
+		}
+		for (Map.Entry<String, Set<String>> entry : this.dependencies.entrySet()) {
+			for (String dependency : entry.getValue()) {
+				dependents.get(dependency).add(entry.getKey());
+			}
+		}
+
+		final Map<String, Long> expected = this.expectedDurations();
+		final Map<String, Long> priorities = new HashMap<String, Long>();
+		for (String name : this.tasks.keySet()) {
+			this.priority(name, expected, dependents, priorities);
+		}
+		final Map<String, Integer> order = new HashMap<String, Integer>();
+		for (String name : this.tasks.keySet()) {
+			order.put(name, order.size());
+		}
+		PriorityQueue<String> ready = new PriorityQueue<String>(Math.max(1, this.tasks.size()), new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				int byPriority = priorities.get(o2).compareTo(priorities.get(o1));
+				return byPriority != 0 ? byPriority : order.get(o1) - order.get(o2);
+			}
+		});
+
+		int workers = Math.max(1, Math.min(this.threads, this.tasks.size()));
+		ExecutorService pool = Executors.newFixedThreadPool(workers, new WorkerThreadFactory());
+		CompletionService<String> completion = new ExecutorCompletionService<String>(pool);
+		Map<Future<String>, String> running = new HashMap<Future<String>, String>();
+		Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+		Set<String> done = new LinkedHashSet<String>();
+		Map<String, Long> durations = new ConcurrentHashMap<String, Long>();
+		this.processDurations.clear();
+		long start = System.nanoTime();
+
+		try {
+			for (String name : this.tasks.keySet()) {
+				if (remaining.get(name) == 0) {
+					ready.add(name);
+				}
+			}
+			this.startReady(ready, running, completion, workers, durations);
+
+			while (! running.isEmpty()) {
+				Future<String> future = completion.take();
+				String name = running.remove(future);
+				try {
+					future.get();
+					done.add(name);
+					if (! failures.isEmpty() && ! this.continueOnFailure) {
+						continue;
+					}
+					for (String dependent : dependents.get(name)) {
+						int count = remaining.get(dependent) - 1;
+						remaining.put(dependent, count);
+						if (count == 0) {
+							ready.add(dependent);
+						}
+					}
+					this.startReady(ready, running, completion, workers, durations);
+				} catch (CancellationException e) {
+					this.log.debug("Task [" + name + "] cancelled");
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					failures.put(name, cause instanceof Exception ? (Exception) cause : e);
+					if (this.continueOnFailure) {
+						this.startReady(ready, running, completion, workers, durations);
+					} else if (failures.size() == 1 && ! running.isEmpty()) {
+						this.log.warn("Task [" + name + "] failed. Cancelling " + running.size() + " running task(s).");
+						for (Future<String> other : running.keySet()) {
+							other.cancel(true);
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<String> other : running.keySet()) {
+				other.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while waiting for tasks " + running.values(), e);
+		} finally {
+			shutdown(pool);
+		}
+
+		if (this.history != null) {
+			for (String name : done) {
+				Long duration = this.processDurations.get(name);
+				if (duration != null) {
+					this.history.record(this.historyScope + name, duration);
+				}
+			}
+			this.history.save();
+		}
+
+		if (! failures.isEmpty()) {
+			this.report(failures, done);
+		}
+		this.logCriticalPaths(expected, durations, (System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * The process time of a task that succeeded : the time its processes ran, once they got their process slot.
+	 * @param name the task name
+	 * @return the process time in milliseconds, null if the task did not run any process (e.g. up-to-date, cached) or failed
+	 */
+	Long processDuration(String name) {
+		return this.processDurations.get(name);
+	}
+
+	/**
+	 * Add the duration of a process to the task that runs on the current thread, if any.
+	 * Only the tasks that ran a process have a duration in the {@link DurationHistory}.
+	 * @param millis the process duration, in milliseconds, from when it got its process slot (see {@link ResourceGovernor})
+	 */
+	static void addProcessTime(long millis) {
+		Long processTime = PROCESS_TIME.get();
+		PROCESS_TIME.set(processTime == null ? millis : processTime + millis);
+	}
+
+	/**
+	 * Start the ready tasks with the highest priority, while there are free workers.
+	 */
+	private void startReady(
+		PriorityQueue<String> ready,
+		Map<Future<String>, String> running,
+		CompletionService<String> completion,
+		int workers,
+		Map<String, Long> durations) {
+
+		while (running.size() < workers && ! ready.isEmpty()) {
+			String next = ready.poll();
+			running.put(completion.submit(this.callable(next, durations)), next);
+		}
+	}
+
+	private Callable<String> callable(final String name, final Map<String, Long> durations) {
+		final Task task = this.tasks.get(name);
+		return new Callable<String>() {
+			public String call() throws Exception {
+				long start = System.nanoTime();
+				PROCESS_TIME.remove();
+				try {
+					task.run();
+					durations.put(name, (System.nanoTime() - start) / 1000000);
+					Long processTime = PROCESS_TIME.get();
+					if (processTime != null) {
+						TaskScheduler.this.processDurations.put(name, processTime);
+					}
+				} finally {
+					PROCESS_TIME.remove();
+				}
+				return name;
+			}
+		};
+	}
+
+	/**
+	 * The expected duration of each task, from the {@link #history}.
+	 * A task without history is expected to last the average of the known durations.
+	 * @return the expected durations in milliseconds. All 0 if there is no history.
+	 */
+	private Map<String, Long> expectedDurations() {
+		Map<String, Long> expected = new HashMap<String, Long>();
+		long total = 0;
+		int known = 0;
+		for (String name : this.tasks.keySet()) {
+			Long duration = this.history == null ? null : this.history.expected(this.historyScope + name);
+			if (duration != null) {
+				expected.put(name, duration);
+				total += duration;
+				known++;
+			}
+		}
+
+		long unknown = known == 0 ? 0 : total / known;
+		for (String name : this.tasks.keySet()) {
+			if (! expected.containsKey(name)) {
+				expected.put(name, unknown);
+			}
+		}
+		return expected;
+	}
+
+	/**
+	 * The priority of a task : its duration plus the longest path of its dependents (its 'bottom level').
+	 * @param name       the task name
+	 * @param durations  the task durations
+	 * @param dependents the dependents of each task
+	 * @param priorities the computed priorities
+	 * @return the task priority
+	 */
+	private long priority(String name, Map<String, Long> durations, Map<String, List<String>> dependents, Map<String, Long> priorities) {
+		Long priority = priorities.get(name);
+		if (priority != null) {
+			return priority;
+		}
+
+		long longest = 0;
+		for (String dependent : dependents.get(name)) {
+			longest = Math.max(longest, this.priority(dependent, durations, dependents, priorities));
+		}
+		priority = durations.get(name) + longest;
+		priorities.put(name, priority);
+		return priority;
+	}
+
+	/**
+	 * The longest dependency chain of the tasks, by duration.
+	 * @param durations the task durations. The tasks with no duration are ignored.
+	 * @return the critical path, from the first task to the last
+	 */
+	private List<String> criticalPath(Map<String, Long> durations) {
+		Map<String, Long> ends = new HashMap<String, Long>();
+		Map<String, String> previous = new HashMap<String, String>();
+		String last = null;
+		for (String name : this.tasks.keySet()) {
+			if (! durations.containsKey(name)) {
+				continue;
+			}
+			long end = this.end(name, durations, ends, previous);
+			if (last == null || end > ends.get(last)) {
+				last = name;
+			}
+		}
+
+		List<String> path = new ArrayList<String>();
+		for (String name = last; name != null; name = previous.get(name)) {
+			path.add(0, name);
+		}
+		return path;
+	}
+
+	/** The end of a task on an infinite worker pool : its duration plus the latest end of its dependencies. */
+	private long end(String name, Map<String, Long> durations, Map<String, Long> ends, Map<String, String> previous) {
+		Long end = ends.get(name);
+		if (end != null) {
+			return end;
+		}
+
+		long start = 0;
+		for (String dependency : this.dependencies.get(name)) {
+			if (durations.containsKey(dependency)) {
+				long dependencyEnd = this.end(dependency, durations, ends, previous);
+				if (dependencyEnd > start) {
+					start = dependencyEnd;
+					previous.put(name, dependency);
+				}
+			}
+		}
+		end = start + durations.get(name);
+		ends.put(name, end);
+		return end;
+	}
+
+	/**
+	 * Log the expected (from the history) and actual critical paths, and the actual makespan.
+	 * @param expected the expected durations
+	 * @param actual   the actual durations of the successful tasks
+	 * @param makespan the time it took to run all the tasks, in milliseconds
+	 */
+	private void logCriticalPaths(Map<String, Long> expected, Map<String, Long> actual, long makespan) {
+		if (this.history == null || this.tasks.size() < 2) {
+			return;
+		}
+		boolean hasHistory = false;
+		for (Long duration : expected.values()) {
+			hasHistory |= duration > 0;
+		}
+		this.log.info("Expected critical path : " + (hasHistory ? describe(this.criticalPath(expected), expected) : "no history yet"));
+		this.log.info("Actual critical path   : " + describe(this.criticalPath(actual), actual));
+		this.log.info("Actual makespan        : " + makespan + " ms on " + this.threads + " worker(s)");
+	}
+
+	private static String describe(List<String> path, Map<String, Long> durations) {
+		StringBuilder description = new StringBuilder();
+		long total = 0;
+		for (String name : path) {
+			description.append(description.length() == 0 ? "" : " -> ");
+			description.append("[").append(name).append("] ").append(durations.get(name)).append(" ms");
+			total += durations.get(name);
+		}
+		return description.append(" = ").append(total).append(" ms").toString();
+	}
+
+	/**
+	 * Check that every dependency is a known task and that there is no dependency cycle.
+	 * @throws MojoExecutionException unknown dependency or cycle
+	 */
+	private void checkDependencies() throws MojoExecutionException {
+		for (Map.Entry<String, Set<String>> entry : this.dependencies.entrySet()) {
+			for (String dependency : entry.getValue()) {
+				if (! this.tasks.containsKey(dependency)) {
+					throw new MojoExecutionException(
+						"Task [" + entry.getKey() + "] depends on unknown task [" + dependency + "]"
+					);
+				}
+			}
+		}
+
+		Set<String> visited = new LinkedHashSet<String>();
+		for (String name : this.tasks.keySet()) {
+			this.checkCycle(name, new LinkedHashSet<String>(), visited);
+		}
+	}
+
+	private void checkCycle(String name, Set<String> path, Set<String> visited) throws MojoExecutionException {
+		if (path.contains(name)) {
+			throw new MojoExecutionException("Dependency cycle detected : " + path + " -> [" + name + "]");
+		}
+		if (! visited.add(name)) {
+			return;
+		}
+		path.add(name);
+		for (String dependency : this.dependencies.get(name)) {
+			this.checkCycle(dependency, path, visited);
+		}
+		path.remove(name);
+	}
+
+	/**
+	 * Throw the aggregated failure report.
+	 * @param failures the failed tasks and their exception
+	 * @param done     the tasks that completed successfully
+	 * @throws MojoExecutionException if any task threw one
+	 * @throws MojoFailureException   otherwise
+	 */
+	private void report(Map<String, Exception> failures, Set<String> done)
+		throws MojoExecutionException, MojoFailureException {
+
+		Set<String> skipped = new LinkedHashSet<String>(this.tasks.keySet());
+		skipped.removeAll(done);
+		skipped.removeAll(failures.keySet());
+
+		StringBuilder report = new StringBuilder();
+		report.append(failures.size()).append(" task(s) failed out of ").append(this.tasks.size()).append(" :");
+		boolean executionError = false;
+		for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+			Exception cause = failure.getValue();
+			executionError |= cause instanceof MojoExecutionException;
+			report.append("\n  - [").append(failure.getKey()).append("] : ").append(cause.getMessage());
+			if (cause.getCause() != null) {
+				report.append(" (").append(cause.getCause().getMessage()).append(")");
+			}
+		}
+		if (! skipped.isEmpty()) {
+			report.append("\n  Not run or cancelled : ").append(skipped);
+		}
+
+		Exception first = failures.values().iterator().next();
+		if (executionError) {
+			throw new MojoExecutionException(report.toString(), first);
+		}
+		throw new MojoFailureException(report.toString(), first);
+	}
+
+	private static void shutdown(ExecutorService pool) {
+		pool.shutdownNow();
+		try {
+			pool.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Name the worker threads so the log lines can be related to a task. */
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+		private final int pool = POOL_COUNT.incrementAndGet();
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "npm-worker-" + this.pool + "-" + this.count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.github.ug_dbg;
+
+import com.github.ug_dbg.json.JSONWriter;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Chrome trace event file (JSON array format), shared by all the npm/ng executions of a reactor build.
+ * It can be opened in Perfetto (https://ui.perfetto.dev) or chrome://tracing.
+ * <br>
+ * Each execution is a begin ('B') / end ('E') pair of events :
+ * <ul>
+ *     <li>pid : the maven JVM</li>
+ *     <li>tid : the maven thread (e.g. a '-T' builder thread), named with a metadata ('M') event</li>
+ *     <li>cat : the maven module</li>
+ * </ul>
+ * The events are appended, one per line, and the array is never closed, as allowed by the trace event format :
+ * an interrupted build still produces a readable trace.
+ * <br>
+ * The file is truncated by the first event of a new build (see {@link #TraceEvents(File, long, Log)}).
+ */
+class TraceEvents {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The trace file is shared by the modules and threads of a reactor build. */
+	private static final Object FILE_LOCK = new Object();
+
+	/** The build start time of each trace file of this JVM : a different start time means a new build. */
+	private static final Map<File, Long> BUILDS = new HashMap<File, Long>();
+
+	/** The threads already named in each trace file of this JVM. */
+	private static final Map<File, Set<Long>> THREADS = new HashMap<File, Set<Long>>();
+
+	/** The trace clock : epoch microseconds, with nanoTime precision. */
+	private static final long EPOCH_MICROS = System.currentTimeMillis() * 1000;
+	private static final long EPOCH_NANOS  = System.nanoTime();
+
+	private static final long PID = ProcessHandle.current().pid();
+
+	private final File file;
+	private final long buildStart;
+	private final Log log;
+
+	/**
+	 * Create a trace event writer.
+	 * @param file       the trace file
+	 * @param buildStart the build start time : the file is truncated by the first event of a build
+	 * @param log        the maven logger, for the write errors
+	 */
+	TraceEvents(File file, long buildStart, Log log) {
+		this.file = file.getAbsoluteFile();
+		this.buildStart = buildStart;
+		this.log = log;
+	}
+
+	/**
+	 * The current trace timestamp.
+	 * @return the current epoch time in microseconds
+	 */
+	static long now() {
+		return EPOCH_MICROS + (System.nanoTime() - EPOCH_NANOS) / 1000;
+	}
+
+	/**
+	 * Write the begin event of an execution, on the current thread.
+	 * @param module     the maven module
+	 * @param name       the execution name (e.g. the command line)
+	 * @param workingDir the working directory
+	 */
+	void begin(String module, String name, File workingDir) {
+		StringBuilder event = new StringBuilder();
+		JSONWriter writer = this.event(event, "B", module, name, now());
+		writer.key("args").object().key("workingDir").value(workingDir.getAbsolutePath()).endObject();
+		writer.endObject();
+		this.append(event);
+	}
+
+	/**
+	 * Write the end event of an execution, on the current thread.
+	 * @param module   the maven module
+	 * @param name     the execution name (e.g. the command line)
+	 * @param exitCode the process exit code
+	 */
+	void end(String module, String name, int exitCode) {
+		StringBuilder event = new StringBuilder();
+		JSONWriter writer = this.event(event, "E", module, name, now());
+		writer.key("args").object().key("exitCode").value(exitCode).endObject();
+		writer.endObject();
+		this.append(event);
+	}
+
+	/**
+	 * Start writing an event : the caller adds its specific fields and ends the object.
+	 * @param out       where to write the event
+	 * @param phase     the event phase ('B', 'E'...)
+	 * @param module    the maven module
+	 * @param name      the execution name
+	 * @param timestamp the event timestamp, in microseconds
+	 * @return the JSON writer, in the event object
+	 */
+	private JSONWriter event(StringBuilder out, String phase, String module, String name, long timestamp) {
+		return new JSONWriter(out)
+			.object()
+			.key("name").value(name)
+			.key("cat").value(module)
+			.key("ph").value(phase)
+			.key("ts").value(timestamp)
+			.key("pid").value(PID)
+			.key("tid").value(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Append an event to the trace file. Truncate the file if this is the first event of the build.
+	 * Name the current thread if this is its first event in the file. Errors are logged.
+	 * @param event the JSON event
+	 */
+	private void append(CharSequence event) {
+		synchronized (FILE_LOCK) {
+			Long build = BUILDS.get(this.file);
+			boolean truncate = build == null || build != this.buildStart;
+			if (truncate) {
+				BUILDS.put(this.file, this.buildStart);
+				THREADS.put(this.file, new HashSet<Long>());
+			}
+
+			StringBuilder out = new StringBuilder();
+			if (truncate) {
+				out.append("[\n");
+			}
+			Thread thread = Thread.currentThread();
+			if (THREADS.get(this.file).add(thread.getId())) {
+				new JSONWriter(out)
+					.object()
+					.key("name").value("thread_name")
+					.key("ph").value("M")
+					.key("pid").value(PID)
+					.key("tid").value(thread.getId())
+					.key("args").object().key("name").value(thread.getName()).endObject()
+					.endObject();
+				out.append(",\n");
+			}
+			out.append(event).append(",\n");
+
+			try {
+				FileUtils.forceMkdirParent(this.file);
+				OutputStream stream = new FileOutputStream(this.file, ! truncate);
+				try {
+					stream.write(out.toString().getBytes(UTF8));
+				} finally {
+					stream.close();
+				}
+			} catch (IOException e) {
+				this.log.warn("Could not write trace events to [" + this.file + "]", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.github.ug_dbg;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Move directories to sibling 'tombstone' directories, using an atomic rename, then delete the tombstones in background.
+ * <br>
+ * The tombstones are deleted either on a daemon thread (that does not survive the maven JVM)
+ * or by a detached 'rm -rf' (or 'rmdir /s /q' on Windows) process.
+ * The tombstones left by a previous (crashed or interrupted) run can be found using {@link #tombstones(File)}.
+ */
+class Trash {
+
+	/** The tombstone directory name prefix. */
+	static final String TOMBSTONE_PREFIX = ".mvn-npm-trash-";
+
+	private final Log log;
+
+	Trash(Log log) {
+		this.log = log;
+	}
+
+	/**
+	 * Atomically rename a directory to a sibling tombstone directory.
+	 * @param directory the directory to trash
+	 * @return the tombstone directory
+	 * @throws IOException the rename failed (e.g. locked file on Windows)
+	 */
+	File moveToTrash(File directory) throws IOException {
+		File tombstone = new File(
+			directory.getAbsoluteFile().getParentFile(),
+			TOMBSTONE_PREFIX + directory.getName() + "-" + UUID.randomUUID()
+		);
+		Files.move(directory.toPath(), tombstone.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		return tombstone;
+	}
+
+	/**
+	 * Find the tombstone directories in a directory.
+	 * @param directory the directory to scan
+	 * @return the tombstones. Never null.
+	 */
+	static List<File> tombstones(File directory) {
+		List<File> tombstones = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return tombstones;
+		}
+		for (File file : files) {
+			if (file.getName().startsWith(TOMBSTONE_PREFIX) && file.isDirectory()) {
+				tombstones.add(file);
+			}
+		}
+		return tombstones;
+	}
+
+	/**
+	 * Delete some tombstones on a daemon thread. The deletion is interrupted when the JVM exits.
+	 * @param tombstones the tombstones to delete
+	 * @param engine     the delete engine
+	 */
+	void deleteInThread(final List<File> tombstones, final ParallelDelete engine) {
+		if (tombstones.isEmpty()) {
+			return;
+		}
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				for (File tombstone : tombstones) {
+					ParallelDelete.Report report = engine.delete(tombstone.toPath());
+					Trash.this.log.debug("Deleted tombstone [" + tombstone + "] (" + report + ")");
+				}
+			}
+		}, "npm-trash");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Delete some tombstones with a detached process, that survives the JVM. Do not wait for the process.
+	 * @param tombstones the tombstones to delete
+	 * @throws IOException the process could not be started
+	 */
+	void deleteInProcess(List<File> tombstones) throws IOException {
+		if (tombstones.isEmpty()) {
+			return;
+		}
+
+		List<String> command = new ArrayList<String>();
+		if (AbstractMojo.isWindows()) {
+			command.add("cmd");
+			command.add("/c");
+			command.add("rmdir");
+			command.add("/s");
+			command.add("/q");
+		} else {
+			command.add("rm");
+			command.add("-rf");
+		}
+		for (File tombstone : tombstones) {
+			command.add(tombstone.getAbsolutePath());
+		}
+
+		File nowhere = new File(AbstractMojo.isWindows() ? "NUL" : "/dev/null");
+		new ProcessBuilder(command)
+			.redirectErrorStream(true)
+			.redirectOutput(nowhere)
+			.redirectInput(ProcessBuilder.Redirect.from(nowhere))
+			.start();
+		this.log.debug("Started deletion process for " + tombstones);
+	}
+}
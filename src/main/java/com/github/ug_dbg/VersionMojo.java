@@ -53,6 +53,20 @@ public class VersionMojo extends AbstractMojo {
 		this.updateVersion(new File(this.workingDir, this.packageJsonFile), this.packageJsonFileVersion);
 	}
 
+	/**
+	 * The package.json file this execution rewrites.
+	 * Used by the {@link EarlyInstallParticipant} to not install while the build rewrites it.
+	 * @return the package.json file, canonical
+	 */
+	File updatedFile() {
+		File packageJson = new File(this.workingDir, this.packageJsonFile);
+		try {
+			return packageJson.getCanonicalFile();
+		} catch (IOException e) {
+			return packageJson.getAbsoluteFile();
+		}
+	}
+
 	/**
 	 * Delete a file and log the deletion status.
 	 * Do not throw any exception.
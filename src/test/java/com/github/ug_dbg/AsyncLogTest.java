@@ -0,0 +1,154 @@
+package com.github.ug_dbg;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncLogTest {
+
+	/** A log whose consumer blocks on the 'first' entry, until released : the buffer then fills up. */
+	private final CountDownLatch entered = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final RecordingLog log = new RecordingLog() {
+		@Override
+		public void info(CharSequence content, Throwable error) {
+			if ("first".equals(content)) {
+				AsyncLogTest.this.entered.countDown();
+				try {
+					AsyncLogTest.this.release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			super.info(content, error);
+		}
+	};
+
+	@Test
+	public void block() throws Exception {
+		final AsyncLog async = this.fill(AsyncLog.Overflow.BLOCK);
+		Thread producer = new Thread(new Runnable() {
+			public void run() {
+				async.info("5");
+			}
+		});
+		producer.start();
+		producer.join(200);
+		Assert.assertTrue("The producer waits for the consumer", producer.isAlive());
+
+		this.release.countDown();
+		producer.join(TimeUnit.SECONDS.toMillis(10));
+		Assert.assertFalse(producer.isAlive());
+		async.close();
+
+		Assert.assertEquals(0, async.dropped());
+		Assert.assertTrue(async.blocked() > 0);
+		Assert.assertEquals(Arrays.asList("info:first", "info:1", "info:2", "info:3", "info:4", "info:5"), this.log.messages.subList(0, 6));
+	}
+
+	@Test
+	public void dropOldest() throws Exception {
+		AsyncLog async = this.fill(AsyncLog.Overflow.DROP_OLDEST);
+		async.info("5");
+		async.info("6");
+		this.release.countDown();
+		async.close();
+
+		Assert.assertEquals(2, async.dropped());
+		Assert.assertEquals(Arrays.asList(
+			"info:first", "info:3", "info:4", "info:5", "info:6",
+			"warn:[2] line(s) dropped : the log output is too slow (DROP_OLDEST)",
+			"debug:Async log : [5] line(s), [2] dropped, [0] blocked producer(s)"
+		), this.log.messages);
+	}
+
+	@Test
+	public void summarize() throws Exception {
+		AsyncLog async = this.fill(AsyncLog.Overflow.SUMMARIZE);
+		async.info("5");
+		async.info("6");
+		this.release.countDown();
+		async.close();
+
+		Assert.assertEquals(2, async.dropped());
+		Assert.assertEquals(Arrays.asList(
+			"info:first", "info:1", "info:2", "info:3", "info:4",
+			"warn:[2] line(s) dropped : the log output is too slow (SUMMARIZE)",
+			"debug:Async log : [5] line(s), [2] dropped, [0] blocked producer(s)"
+		), this.log.messages);
+	}
+
+	@Test
+	public void closeDrains() {
+		RecordingLog log = new RecordingLog();
+		AsyncLog async = new AsyncLog(log, 2048, AsyncLog.Overflow.BLOCK);
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			async.warn(String.valueOf(i));
+			expected.add("warn:" + i);
+		}
+		async.close();
+		Assert.assertEquals(expected, log.messages.subList(0, 1000));
+
+		async.error("after close");
+		Assert.assertEquals("error:after close", log.messages.get(log.messages.size() - 1));
+	}
+
+	@Test
+	public void concurrentProducers() throws Exception {
+		RecordingLog log = new RecordingLog();
+		final AsyncLog async = new AsyncLog(log, 64, AsyncLog.Overflow.BLOCK);
+		final int lines = 10000;
+		List<Thread> producers = new ArrayList<Thread>();
+		for (int p = 0; p < 4; p++) {
+			final int producer = p;
+			producers.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < lines; i++) {
+						async.info(producer + ":" + i);
+					}
+				}
+			}));
+		}
+		for (Thread producer : producers) {
+			producer.start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		async.close();
+
+		Assert.assertEquals(0, async.dropped());
+		int[] next = new int[producers.size()];
+		int count = 0;
+		for (String message : log.messages) {
+			if (! message.startsWith("info:")) {
+				continue;
+			}
+			String[] line = message.substring("info:".length()).split(":");
+			int producer = Integer.parseInt(line[0]);
+			Assert.assertEquals("The lines of a producer keep their order", next[producer], Integer.parseInt(line[1]));
+			next[producer]++;
+			count++;
+		}
+		Assert.assertEquals(4 * lines, count);
+	}
+
+	/**
+	 * Block the consumer on the 'first' entry, then fill the buffer (capacity 4) with '1' to '4'.
+	 */
+	private AsyncLog fill(AsyncLog.Overflow overflow) throws InterruptedException {
+		AsyncLog async = new AsyncLog(this.log, 4, overflow);
+		async.info("first");
+		Assert.assertTrue(this.entered.await(10, TimeUnit.SECONDS));
+		for (int i = 1; i <= 4; i++) {
+			async.info(String.valueOf(i));
+		}
+		return async;
+	}
+}
@@ -0,0 +1,44 @@
+package com.github.ug_dbg;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+public class BackgroundExecutionsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void spill() {
+		RecordingLog log = new RecordingLog();
+		BackgroundExecutions.BufferedLog buffered = new BackgroundExecutions.BufferedLog(log, this.folder.getRoot(), 2);
+		buffered.info("first");
+		buffered.warn("second");
+		buffered.error("third");
+		buffered.debug("fourth");
+		Assert.assertTrue(log.messages.isEmpty());
+		Assert.assertEquals(1, this.folder.getRoot().list().length);
+
+		buffered.replay(log);
+		buffered.info("fifth");
+
+		Assert.assertEquals(Arrays.asList("info:first", "warn:second", "error:third", "debug:fourth", "info:fifth"), log.messages);
+		Assert.assertEquals("The spill file is deleted once replayed", 0, this.folder.getRoot().list().length);
+	}
+
+	@Test
+	public void dropped() {
+		RecordingLog log = new RecordingLog();
+		BackgroundExecutions.BufferedLog buffered = new BackgroundExecutions.BufferedLog(log, null, 1);
+		buffered.info("first");
+		buffered.info("second");
+		buffered.info("third");
+		buffered.replay(log);
+
+		Assert.assertEquals(Arrays.asList("info:first", "warn:[2] background log entries were dropped"), log.messages);
+	}
+}
@@ -0,0 +1,79 @@
+package com.github.ug_dbg;
+
+import com.github.ug_dbg.json.JSONObject;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public class CoverageMergeTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String STATEMENT_MAP =
+		"\"statementMap\":{\"0\":{\"start\":{\"line\":1}},\"1\":{\"start\":{\"line\":2}}}";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void merge() throws Exception {
+		File first = this.write("first.json", "{"
+			+ "\"src/a.js\":{\"path\":\"src/a.js\"," + STATEMENT_MAP + ",\"s\":{\"0\":1,\"1\":0},\"f\":{\"0\":0},\"b\":{\"0\":[1,0]}}"
+			+ "}");
+		File second = this.write("second.json", "{\n"
+			+ "  \"src/a.js\" : {\"path\":\"src/a.js\"," + STATEMENT_MAP + ",\"s\":{\"0\":0,\"1\":2},\"f\":{\"0\":1},\"b\":{\"0\":[0,3]}},\n"
+			+ "  \"src/\u00e9.js\" : {\"path\":\"src/\u00e9.js\",\"statementMap\":{\"0\":{\"start\":{\"line\":1}}},\"s\":{\"0\":0},\"f\":{},\"b\":{}}\n"
+			+ "}");
+		File output = new File(this.folder.getRoot(), "merged/coverage-final.json");
+		File summary = new File(this.folder.getRoot(), "merged/coverage-summary.json");
+
+		CoverageMerge merge = new CoverageMerge(Arrays.asList(first, second));
+		long[] total = merge.merge(output, summary);
+
+		Assert.assertArrayEquals(new long[] {2, 3, 2, 3, 1, 1, 2, 2}, total);
+		Assert.assertEquals(2, merge.files());
+
+		JSONObject merged = new JSONObject(FileUtils.readFileToString(output, UTF8));
+		JSONObject a = merged.getJSONObject("src/a.js");
+		Assert.assertEquals(1, a.getJSONObject("s").getLong("0"));
+		Assert.assertEquals(2, a.getJSONObject("s").getLong("1"));
+		Assert.assertEquals(1, a.getJSONObject("f").getLong("0"));
+		Assert.assertEquals(3, a.getJSONObject("b").getJSONArray("0").getLong(1));
+		Assert.assertTrue(merged.has("src/\u00e9.js"));
+
+		JSONObject summaries = new JSONObject(FileUtils.readFileToString(summary, UTF8));
+		JSONObject lines = summaries.getJSONObject("total").getJSONObject("lines");
+		Assert.assertEquals(3, lines.getLong("total"));
+		Assert.assertEquals(2, lines.getLong("covered"));
+		Assert.assertEquals(66.67, lines.getDouble("pct"), 0.001);
+		Assert.assertEquals(0, summaries.getJSONObject("src/\u00e9.js").getJSONObject("statements").getLong("covered"));
+	}
+
+	@Test
+	public void describe() {
+		// The percentages use the default locale decimal separator
+		String expected = String.format(
+			"lines %.2f%% (2/3), statements %.2f%% (1/2), functions %.2f%% (0/0), branches %.2f%% (0/4)", 66.67, 50.0, 100.0, 0.0
+		);
+		Assert.assertEquals(expected, CoverageMerge.describe(new long[] {2, 3, 1, 2, 0, 0, 0, 4}));
+	}
+
+	@Test(expected = MojoExecutionException.class)
+	public void invalidInput() throws Exception {
+		File invalid = this.write("invalid.json", "[1, 2]");
+		new CoverageMerge(Arrays.asList(invalid)).merge(new File(this.folder.getRoot(), "merged.json"), null);
+	}
+
+	private File write(String name, String content) throws IOException {
+		File file = this.folder.newFile(name);
+		FileUtils.writeStringToFile(file, content, UTF8);
+		return file;
+	}
+}
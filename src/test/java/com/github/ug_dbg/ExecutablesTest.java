@@ -0,0 +1,94 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+public class ExecutablesTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** An executable of the PATH, to check it has the lowest priority. */
+	private static final String SYSTEM = "sh";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File workingDir;
+	private File npmHome;
+
+	@Before
+	public void directories() throws IOException {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		this.workingDir = this.folder.newFolder("packages", "app");
+		this.npmHome = this.folder.newFolder("npm");
+	}
+
+	@Test
+	public void resolutionOrder() throws Exception {
+		File path = Executables.resolve(SYSTEM, this.folder.newFolder("other"), null);
+		Assume.assumeNotNull(path);
+		Assert.assertNotEquals(this.folder.getRoot(), path.getParentFile().getParentFile());
+
+		File home = executable(this.npmHome, SYSTEM);
+		Assert.assertEquals(home, Executables.resolve(SYSTEM, this.folder.newFolder("home"), this.npmHome));
+
+		File ancestor = executable(new File(this.folder.getRoot(), "node_modules/.bin"), SYSTEM);
+		Assert.assertEquals(ancestor, Executables.resolve(SYSTEM, this.folder.newFolder("ancestor"), this.npmHome));
+
+		File local = executable(new File(this.workingDir, "node_modules/.bin"), SYSTEM);
+		Assert.assertEquals(local, Executables.resolve(SYSTEM, this.workingDir, this.npmHome));
+	}
+
+	@Test
+	public void notExecutable() throws Exception {
+		File bin = new File(this.workingDir, "node_modules/.bin");
+		FileUtils.writeStringToFile(new File(bin, "ng"), "#!/bin/sh\n", UTF8);
+		Assert.assertTrue(new File(bin, "ng").setExecutable(false));
+
+		Assert.assertNull(Executables.resolve("ng", this.workingDir, this.npmHome));
+	}
+
+	@Test
+	public void notFound() {
+		Assert.assertNull(Executables.resolve("mvn-npm-plugin-missing-executable", this.workingDir, this.npmHome));
+	}
+
+	@Test
+	public void installedAfterTheFirstLookup() throws Exception {
+		File home = executable(this.npmHome, "ng");
+		Assert.assertEquals(home, Executables.resolve("ng", this.workingDir, this.npmHome));
+
+		// 'npm install' creates an ancestor, then a local node_modules/.bin/ng
+		File ancestor = executable(new File(this.folder.getRoot(), "packages/node_modules/.bin"), "ng");
+		Assert.assertEquals(ancestor, Executables.resolve("ng", this.workingDir, this.npmHome));
+		File local = executable(new File(this.workingDir, "node_modules/.bin"), "ng");
+		Assert.assertEquals(local, Executables.resolve("ng", this.workingDir, this.npmHome));
+		Assert.assertEquals(local, Executables.resolve("ng", this.workingDir, this.npmHome));
+	}
+
+	@Test
+	public void deletedAfterTheFirstLookup() throws Exception {
+		File home = executable(this.npmHome, "ng");
+		File local = executable(new File(this.workingDir, "node_modules/.bin"), "ng");
+		Assert.assertEquals(local, Executables.resolve("ng", this.workingDir, this.npmHome));
+
+		// 'clean' deletes node_modules
+		FileUtils.deleteDirectory(new File(this.workingDir, "node_modules"));
+		Assert.assertEquals(home, Executables.resolve("ng", this.workingDir, this.npmHome));
+	}
+
+	private static File executable(File dir, String name) throws IOException {
+		File executable = new File(dir, name);
+		FileUtils.writeStringToFile(executable, "#!/bin/sh\n", UTF8);
+		Assert.assertTrue(executable.setExecutable(true));
+		return executable.getAbsoluteFile();
+	}
+}
@@ -0,0 +1,126 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+public class IncrementalExecutionTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String[] INPUTS  = {"src/**", "package.json"};
+	private static final String[] OUTPUTS = {"dist"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final RecordingLog log = new RecordingLog();
+
+	@Test
+	public void cacheKeyDoesNotDependOnTheLocation() throws Exception {
+		File first = this.checkout("first");
+		File second = this.checkout("elsewhere/second");
+
+		IncrementalExecution firstExecution = this.execution(first, new CommandLine(new File(first, "node_modules/.bin/ng")));
+		IncrementalExecution secondExecution = this.execution(
+			second,
+			new CommandLine("cmd").addArgument("/c").addArgument(new File(second, "node_modules/.bin/ng.cmd").getPath())
+		);
+
+		Assert.assertNull(firstExecution.getCacheKey());
+		Assert.assertFalse(firstExecution.isUpToDate());
+		Assert.assertFalse(secondExecution.isUpToDate());
+
+		Assert.assertNotNull(firstExecution.getCacheKey());
+		Assert.assertEquals(firstExecution.getCacheKey(), secondExecution.getCacheKey());
+		Assert.assertNotEquals(firstExecution.getKey(), secondExecution.getKey());
+	}
+
+	@Test
+	public void cacheKeyDependsOnTheInputs() throws Exception {
+		File first = this.checkout("first");
+		File second = this.checkout("second");
+		FileUtils.writeStringToFile(new File(second, "src/app.ts"), "export const changed = true;", UTF8);
+
+		IncrementalExecution firstExecution = this.execution(first, new CommandLine("ng"));
+		IncrementalExecution secondExecution = this.execution(second, new CommandLine("ng"));
+		firstExecution.isUpToDate();
+		secondExecution.isUpToDate();
+
+		Assert.assertNotEquals(firstExecution.getCacheKey(), secondExecution.getCacheKey());
+	}
+
+	@Test
+	public void upToDate() throws Exception {
+		File workingDir = this.checkout("project");
+		Assert.assertFalse(this.execution(workingDir, new CommandLine("ng")).isUpToDate());
+
+		this.execution(workingDir, new CommandLine("ng")).record();
+		Assert.assertTrue(this.execution(workingDir, new CommandLine("ng")).isUpToDate());
+
+		FileUtils.writeStringToFile(new File(workingDir, "src/app.ts"), "export const changed = true;", UTF8);
+		Assert.assertFalse(this.execution(workingDir, new CommandLine("ng")).isUpToDate());
+	}
+
+	@Test
+	public void cacheKeyWithoutIndex() throws Exception {
+		File workingDir = this.checkout("project");
+		CommandLine cmdLine = new CommandLine("ng").addArgument("build");
+		IncrementalExecution indexed = this.execution(workingDir, new CommandLine("ng"));
+		IncrementalExecution execution = new IncrementalExecution(null, cmdLine, workingDir, INPUTS, null, OUTPUTS, this.log);
+		indexed.record();
+
+		Assert.assertFalse(execution.isUpToDate());
+		Assert.assertNotNull(execution.getCacheKey());
+		Assert.assertEquals(indexed.getCacheKey(), execution.getCacheKey());
+
+		execution.record();
+		Assert.assertFalse(execution.isUpToDate());
+	}
+
+	@Test
+	public void tombstonesAreNotInputs() throws Exception {
+		File workingDir = this.checkout("project");
+		IncrementalExecution execution = this.execution(workingDir, new CommandLine("ng"));
+		execution.record();
+
+		FileUtils.writeStringToFile(new File(workingDir, Trash.TOMBSTONE_PREFIX + "src-1/app.ts"), "trashed", UTF8);
+		FileUtils.writeStringToFile(new File(workingDir, "src/" + Trash.TOMBSTONE_PREFIX + "lib-2/util.ts"), "trashed", UTF8);
+		Assert.assertTrue(this.execution(workingDir, new CommandLine("ng")).isUpToDate());
+	}
+
+	@Test
+	public void command() {
+		Assert.assertEquals("npm run build", IncrementalExecution.command(
+			new CommandLine("/opt/node/bin/npm").addArgument("run").addArgument("build")
+		));
+		Assert.assertEquals("npm run build", IncrementalExecution.command(
+			new CommandLine("cmd").addArgument("/c").addArgument("C:\\node\\npm.CMD").addArgument("run").addArgument("build")
+		));
+		Assert.assertEquals("ng build", IncrementalExecution.command(
+			new CommandLine("C:\\project\\node_modules\\.bin\\ng.exe").addArgument("build")
+		));
+	}
+
+	private IncrementalExecution execution(File workingDir, CommandLine cmdLine) {
+		cmdLine.addArgument("build");
+		return new IncrementalExecution(
+			new File(workingDir, "target/npm-incremental.properties"), cmdLine, workingDir, INPUTS, null, OUTPUTS, this.log
+		);
+	}
+
+	/** The same sources, in another directory. */
+	private File checkout(String path) throws IOException {
+		File workingDir = new File(this.folder.getRoot(), path);
+		FileUtils.writeStringToFile(new File(workingDir, "package.json"), "{\"name\":\"app\"}", UTF8);
+		FileUtils.writeStringToFile(new File(workingDir, "src/app.ts"), "export const app = true;", UTF8);
+		FileUtils.writeStringToFile(new File(workingDir, "src/lib/util.ts"), "export const util = 1;", UTF8);
+		return workingDir;
+	}
+}
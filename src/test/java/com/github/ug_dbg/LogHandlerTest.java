@@ -0,0 +1,89 @@
+package com.github.ug_dbg;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+public class LogHandlerTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final RecordingLog log = new RecordingLog();
+	private final PrefixTrie prefixes = new PrefixTrie()
+		.add("npm ERR", Level.SEVERE)
+		.add("npm WARN", Level.WARNING)
+		.add("npm notice", Level.FINE);
+
+	@Test
+	public void lines() {
+		LogHandler handler = new LogHandler.StdOut(this.log, Level.FINE, this.prefixes);
+		write(handler, "first\nnpm ERR! second\r\nnpm WARN third\nnpm notice fourth\nlast");
+		handler.flush();
+
+		Assert.assertEquals(
+			Arrays.asList("info:first", "error:npm ERR! second", "warn:npm WARN third", "debug:npm notice fourth", "info:last"),
+			this.log.messages
+		);
+		Assert.assertEquals(5, handler.lines());
+	}
+
+	@Test
+	public void crlfSplitAcrossWrites() {
+		LogHandler handler = new LogHandler.StdErr(this.log, Level.FINE, this.prefixes);
+		write(handler, "first\r");
+		write(handler, "\nsecond\r");
+		write(handler, "\n");
+		handler.flush();
+
+		Assert.assertEquals(Arrays.asList("warn:first", "warn:second"), this.log.messages);
+	}
+
+	@Test
+	public void lineSplitAcrossWrites() {
+		LogHandler handler = new LogHandler.StdOut(this.log, Level.FINE, this.prefixes);
+		write(handler, "npm E");
+		write(handler, "RR! split");
+		write(handler, "\n");
+
+		Assert.assertEquals(Arrays.asList("error:npm ERR! split"), this.log.messages);
+	}
+
+	@Test
+	public void progressLines() {
+		LogHandler handler = new LogHandler.StdOut(this.log, Level.FINE, this.prefixes);
+		write(handler, "10% building\r20% building\r");
+		write(handler, "30% building\rdone\n");
+		Assert.assertEquals(Arrays.asList("info:done"), this.log.messages);
+
+		write(handler, "40% building\r90% building\r");
+		handler.flush();
+		Assert.assertEquals(Arrays.asList("info:done", "info:90% building"), this.log.messages);
+	}
+
+	@Test
+	public void levelFilter() {
+		LogHandler handler = new LogHandler.StdOut(this.log, Level.WARNING, this.prefixes);
+		write(handler, "npm notice dropped\ninfo dropped\nnpm WARN kept\nnpm ERR! kept\n");
+
+		Assert.assertEquals(Arrays.asList("warn:npm WARN kept", "error:npm ERR! kept"), this.log.messages);
+		Assert.assertEquals(4, handler.lines());
+	}
+
+	@Test
+	public void utf8() {
+		LogHandler handler = new LogHandler.StdOut(this.log, Level.FINE, this.prefixes);
+		byte[] bytes = "h\u00e9h\u00e9 \u2713\n".getBytes(UTF8);
+		// Split a multibyte character across writes
+		handler.write(bytes, 0, 2);
+		handler.write(bytes, 2, bytes.length - 2);
+
+		Assert.assertEquals(Arrays.asList("info:h\u00e9h\u00e9 \u2713"), this.log.messages);
+	}
+
+	private static void write(LogHandler handler, String output) {
+		byte[] bytes = output.getBytes(UTF8);
+		handler.write(bytes, 0, bytes.length);
+	}
+}
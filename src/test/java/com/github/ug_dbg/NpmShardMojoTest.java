@@ -0,0 +1,53 @@
+package com.github.ug_dbg;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NpmShardMojoTest {
+
+	@Test
+	public void longestFirst() {
+		Map<String, Double> weights = new HashMap<String, Double>();
+		weights.put("a.spec.ts", 7.0);
+		weights.put("b.spec.ts", 5.0);
+		weights.put("c.spec.ts", 4.0);
+		weights.put("d.spec.ts", 3.0);
+		weights.put("e.spec.ts", 1.0);
+
+		List<List<String>> shards = NpmShardMojo.partition(
+			Arrays.asList("e.spec.ts", "d.spec.ts", "c.spec.ts", "b.spec.ts", "a.spec.ts"), weights, 2
+		);
+
+		// 7 -> 0, 5 -> 1, 4 -> 1 (9), 3 -> 0 (10), 1 -> 1 (10)
+		Assert.assertEquals(Arrays.asList(
+			Arrays.asList("a.spec.ts", "d.spec.ts"),
+			Arrays.asList("b.spec.ts", "c.spec.ts", "e.spec.ts")
+		), shards);
+	}
+
+	@Test
+	public void fewerFilesThanShards() {
+		Map<String, Double> weights = new HashMap<String, Double>();
+		weights.put("a.spec.ts", 1.0);
+		weights.put("b.spec.ts", 1.0);
+
+		List<List<String>> shards = NpmShardMojo.partition(Arrays.asList("a.spec.ts", "b.spec.ts"), weights, 8);
+
+		Assert.assertEquals(2, shards.size());
+		Assert.assertEquals(1, shards.get(0).size());
+		Assert.assertEquals(1, shards.get(1).size());
+	}
+
+	@Test
+	public void noFile() {
+		List<List<String>> shards = NpmShardMojo.partition(Arrays.<String>asList(), new HashMap<String, Double>(), 4);
+
+		Assert.assertEquals(1, shards.size());
+		Assert.assertTrue(shards.get(0).isEmpty());
+	}
+}
@@ -0,0 +1,117 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PackageGraphTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final RecordingLog log = new RecordingLog();
+
+	@Test
+	public void dependencies() throws Exception {
+		File app = this.pkg("app", "{\"name\":\"app\",\"dependencies\":{\"lib\":\"1\",\"react\":\"18\"},\"devDependencies\":{\"tools\":\"1\"}}");
+		File lib = this.pkg("lib", "{\"name\":\"lib\",\"optionalDependencies\":{\"tools\":\"1\"}}");
+		File tools = this.pkg("tools", "{\"name\":\"tools\"}");
+
+		PackageGraph graph = new PackageGraph(Arrays.asList(app, lib, tools), "package.json", this.log);
+
+		Assert.assertEquals(Arrays.asList(lib, tools), graph.dependencies(app));
+		Assert.assertEquals(Arrays.asList(tools), graph.dependencies(lib));
+		Assert.assertEquals(Collections.<File>emptyList(), graph.dependencies(tools));
+		Assert.assertEquals("app", graph.name(app));
+		Assert.assertTrue(this.log.messages.isEmpty());
+	}
+
+	@Test
+	public void peerDependencies() throws Exception {
+		File host = this.pkg("host", "{\"name\":\"host\",\"devDependencies\":{\"plugin\":\"1\"}}");
+		File plugin = this.pkg("plugin", "{\"name\":\"plugin\",\"peerDependencies\":{\"host\":\"1\"}}");
+
+		PackageGraph graph = new PackageGraph(Arrays.asList(host, plugin), "package.json", this.log);
+
+		Assert.assertEquals(Arrays.asList(plugin), graph.dependencies(host));
+		Assert.assertEquals(Collections.<File>emptyList(), graph.dependencies(plugin));
+		Assert.assertTrue(this.log.messages.isEmpty());
+	}
+
+	@Test
+	public void cycle() throws Exception {
+		File a = this.pkg("a", "{\"name\":\"a\",\"dependencies\":{\"b\":\"1\"}}");
+		File b = this.pkg("b", "{\"name\":\"b\",\"dependencies\":{\"c\":\"1\"}}");
+		File c = this.pkg("c", "{\"name\":\"c\",\"devDependencies\":{\"a\":\"1\"}}");
+
+		PackageGraph graph = new PackageGraph(Arrays.asList(a, b, c), "package.json", this.log);
+
+		Assert.assertEquals(Arrays.asList(b), graph.dependencies(a));
+		Assert.assertEquals(Arrays.asList(c), graph.dependencies(b));
+		Assert.assertEquals(Collections.<File>emptyList(), graph.dependencies(c));
+		Assert.assertEquals(
+			Arrays.asList("warn:Dependency cycle [a -> b -> c -> a] : ignoring the dependency of [c] on [a]"),
+			this.log.messages
+		);
+	}
+
+	@Test
+	public void cycleIsNotRejectedByTheScheduler() throws Exception {
+		File a = this.pkg("a", "{\"name\":\"a\",\"devDependencies\":{\"b\":\"1\"}}");
+		File b = this.pkg("b", "{\"name\":\"b\",\"devDependencies\":{\"a\":\"1\"}}");
+		PackageGraph graph = new PackageGraph(Arrays.asList(a, b), "package.json", this.log);
+
+		TaskScheduler scheduler = new TaskScheduler(2, this.log);
+		for (File dir : Arrays.asList(a, b)) {
+			List<String> dependencies = new ArrayList<String>();
+			for (File dependency : graph.dependencies(dir)) {
+				dependencies.add(dependency.getPath());
+			}
+			scheduler.add(dir.getPath(), new TaskScheduler.Task() {
+				public void run() {
+					// Nothing to do
+				}
+			}, dependencies);
+		}
+		scheduler.execute();
+	}
+
+	@Test
+	public void duplicateName() throws Exception {
+		File first = this.pkg("first", "{\"name\":\"same\"}");
+		File second = this.pkg("second", "{\"name\":\"same\"}");
+		try {
+			new PackageGraph(Arrays.asList(first, second), "package.json", this.log);
+			Assert.fail("A package name declared twice must be rejected");
+		} catch (MojoExecutionException e) {
+			Assert.assertEquals("Package [same] is declared in both [" + first + "] and [" + second + "]", e.getMessage());
+		}
+	}
+
+	@Test
+	public void noPackageJson() throws Exception {
+		File empty = this.folder.newFolder("empty");
+		PackageGraph graph = new PackageGraph(Arrays.asList(empty), "package.json", this.log);
+
+		Assert.assertNull(graph.name(empty));
+		Assert.assertTrue(graph.dependencies(empty).isEmpty());
+	}
+
+	private File pkg(String dir, String packageJson) throws IOException {
+		File workingDir = this.folder.newFolder(dir);
+		FileUtils.writeStringToFile(new File(workingDir, "package.json"), packageJson, UTF8);
+		return workingDir;
+	}
+}
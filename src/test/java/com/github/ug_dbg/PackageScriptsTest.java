@@ -0,0 +1,151 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.exec.environment.EnvironmentUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+public class PackageScriptsTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File workingDir;
+
+	@Before
+	public void packageJson() throws IOException {
+		this.workingDir = this.folder.newFolder("packages", "app");
+		FileUtils.writeStringToFile(new File(this.workingDir, "package.json"), "{"
+			+ "\"name\":\"app\",\"version\":\"1.2.3\",\"config\":{\"port\":8080,\"my-key\":{\"a\":\"b\"}},"
+			+ "\"scripts\":{"
+			+ "\"prebuild\":\"echo pre\",\"build\":\"echo build\",\"postbuild\":\"echo post\","
+			+ "\"args\":\"printf '<%s>'\",\"test\":\"echo test\",\"hello\":\"hello\","
+			+ "\"env\":\"echo $npm_lifecycle_event $npm_package_name $npm_package_version $npm_package_config_port $npm_package_config_my_key_a\""
+			+ "}}", UTF8);
+	}
+
+	@Test
+	public void run() throws Exception {
+		PackageScripts scripts = new PackageScripts(this.workingDir, "package.json");
+
+		Assert.assertEquals("prebuild,build,postbuild", scripts.run(Arrays.asList("run", "build")).toString());
+		Assert.assertEquals("prebuild,build,postbuild", scripts.run(Arrays.asList("run-script", "build", "--", "--prod")).toString());
+		Assert.assertEquals("test", scripts.run(Arrays.asList("test")).toString());
+		Assert.assertEquals("test", scripts.run(Arrays.asList("t")).toString());
+		Assert.assertEquals("args", scripts.run(Arrays.asList("run", "args")).toString());
+	}
+
+	@Test
+	public void missingScript() throws Exception {
+		PackageScripts scripts = new PackageScripts(this.workingDir, "package.json");
+
+		Assert.assertNull(scripts.run(Arrays.asList("run", "missing")));
+		Assert.assertNull(scripts.run(Arrays.asList("start")));
+		Assert.assertNull(scripts.run(Arrays.<String>asList()));
+		Assert.assertNull(new PackageScripts(this.folder.newFolder("empty"), "package.json").run(Arrays.asList("run", "build")));
+	}
+
+	@Test
+	public void npmOptions() throws Exception {
+		PackageScripts scripts = new PackageScripts(this.workingDir, "package.json");
+
+		Assert.assertNull("An npm option requires npm", scripts.run(Arrays.asList("run", "build", "--prod")));
+		Assert.assertNull("Not a script command", scripts.run(Arrays.asList("install")));
+		Assert.assertNull("No script name", scripts.run(Arrays.asList("run")));
+	}
+
+	@Test
+	public void hooks() throws Exception {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		PackageScripts.Run run = new PackageScripts(this.workingDir, "package.json").run(Arrays.asList("run", "build", "--", "fast"));
+
+		Assert.assertEquals("pre\nbuild fast\npost\n", this.execute(run));
+	}
+
+	@Test
+	public void quoting() throws Exception {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		PackageScripts.Run run = new PackageScripts(this.workingDir, "package.json").run(Arrays.asList(
+			"run", "args", "--", "plain-1.0", "\"a b\"", "it's", "$HOME", "x;y", "`id`", "*"
+		));
+
+		Assert.assertEquals("<plain-1.0><a b><it's><$HOME><x;y><`id`><*>", this.execute(run));
+	}
+
+	@Test
+	public void path() throws Exception {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		File rootBin = this.bin(this.folder.getRoot(), "echo root");
+		File appBin = this.bin(this.workingDir, "echo app");
+		PackageScripts.Run run = new PackageScripts(this.workingDir, "package.json").run(Arrays.asList("run", "hello"));
+
+		Assert.assertEquals("app\n", this.execute(run));
+		String path = run.environment("hello", null).get(pathVariable());
+		Assert.assertTrue(path, path.startsWith(appBin.getAbsolutePath() + File.pathSeparator + rootBin.getAbsolutePath()));
+
+		FileUtils.deleteDirectory(appBin);
+		Assert.assertEquals("root\n", this.execute(run));
+	}
+
+	@Test
+	public void environment() throws Exception {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		PackageScripts.Run run = new PackageScripts(this.workingDir, "package.json").run(Arrays.asList("run", "env"));
+
+		Assert.assertEquals("env app 1.2.3 8080 b\n", this.execute(run));
+		Map<String, String> environment = run.environment("env", null);
+		Assert.assertEquals("run-script", environment.get("npm_command"));
+		Assert.assertEquals(this.workingDir.getAbsolutePath(), environment.get("INIT_CWD"));
+	}
+
+	/**
+	 * Run the events of a script, as the exec-all goal does, and return their output.
+	 */
+	private String execute(PackageScripts.Run run) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (String event : run.events()) {
+			CommandLine cmdLine = run.commandLine(event);
+			Map<String, String> environment = EnvironmentUtils.getProcEnvironment();
+			environment.putAll(run.environment(event, null));
+
+			DefaultExecutor executor = new DefaultExecutor();
+			executor.setWorkingDirectory(this.workingDir);
+			executor.setStreamHandler(new PumpStreamHandler(output));
+			executor.execute(cmdLine, environment);
+		}
+		return new String(output.toByteArray(), UTF8);
+	}
+
+	/** Create a node_modules/.bin/hello executable. */
+	private File bin(File dir, String script) throws IOException {
+		File bin = new File(dir, "node_modules/.bin");
+		File hello = new File(bin, "hello");
+		FileUtils.writeStringToFile(hello, "#!/bin/sh\n" + script + "\n", UTF8);
+		Assert.assertTrue(hello.setExecutable(true));
+		return bin;
+	}
+
+	private static String pathVariable() {
+		for (String name : System.getenv().keySet()) {
+			if ("PATH".equalsIgnoreCase(name)) {
+				return name;
+			}
+		}
+		return "PATH";
+	}
+}
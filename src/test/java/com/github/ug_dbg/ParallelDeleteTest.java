@@ -0,0 +1,116 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+
+public class ParallelDeleteTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void nestedTree() throws Exception {
+		File root = this.folder.newFolder("node_modules");
+		for (int i = 0; i < 10; i++) {
+			for (int j = 0; j < 5; j++) {
+				write(new File(root, "pkg-" + i + "/lib/sub-" + j + "/index.js"), "0123456789");
+			}
+			write(new File(root, "pkg-" + i + "/package.json"), "{}");
+			new File(root, "pkg-" + i + "/empty").mkdirs();
+		}
+
+		ParallelDelete.Report report = new ParallelDelete(4).delete(root.toPath());
+
+		Assert.assertFalse(root.exists());
+		Assert.assertEquals(60, report.files());
+		Assert.assertEquals(1 + 10 * (1 + 1 + 5 + 1), report.directories());
+		Assert.assertEquals(50 * 10 + 10 * 2, report.bytes());
+		Assert.assertEquals(0, report.errorCount());
+	}
+
+	@Test
+	public void singleFile() throws Exception {
+		File file = write(new File(this.folder.getRoot(), "package-lock.json"), "{}");
+
+		ParallelDelete.Report report = new ParallelDelete(1).delete(file.toPath());
+
+		Assert.assertFalse(file.exists());
+		Assert.assertEquals(1, report.files());
+		Assert.assertEquals(0, report.directories());
+	}
+
+	@Test
+	public void missing() {
+		ParallelDelete.Report report = new ParallelDelete(1).delete(new File(this.folder.getRoot(), "missing").toPath());
+
+		Assert.assertEquals(0, report.files());
+		Assert.assertEquals(0, report.errorCount());
+	}
+
+	@Test
+	public void readOnlyFiles() throws Exception {
+		File root = this.folder.newFolder("dist");
+		File readOnly = write(new File(root, "assets/read-only.js"), "x");
+		Assert.assertTrue(readOnly.setWritable(false));
+
+		ParallelDelete.Report report = new ParallelDelete(2).delete(root.toPath());
+
+		Assert.assertFalse(root.exists());
+		Assert.assertEquals(0, report.errorCount());
+	}
+
+	@Test
+	public void symlinksAreNotFollowed() throws Exception {
+		File outside = this.folder.newFolder("outside");
+		File kept = write(new File(outside, "kept.txt"), "kept");
+		File root = this.folder.newFolder("node_modules");
+		write(new File(root, "a/index.js"), "a");
+		try {
+			Files.createSymbolicLink(new File(root, "linked").toPath(), outside.toPath());
+			Files.createSymbolicLink(new File(root, "a/kept.txt").toPath(), kept.toPath());
+		} catch (IOException e) {
+			// e.g. no symbolic link privilege on Windows
+			Assume.assumeNoException(e);
+		}
+
+		ParallelDelete.Report report = new ParallelDelete(2).delete(root.toPath());
+
+		Assert.assertFalse(root.exists());
+		Assert.assertTrue("The link target directory is not deleted", kept.isFile());
+		Assert.assertEquals("kept", FileUtils.readFileToString(kept, UTF8));
+		Assert.assertEquals(0, report.errorCount());
+	}
+
+	@Test
+	public void symlinkRoot() throws Exception {
+		File target = this.folder.newFolder("target");
+		File kept = write(new File(target, "kept.txt"), "kept");
+		File link = new File(this.folder.getRoot(), "link");
+		try {
+			Files.createSymbolicLink(link.toPath(), target.toPath());
+		} catch (IOException e) {
+			Assume.assumeNoException(e);
+		}
+
+		new ParallelDelete(1).delete(link.toPath());
+
+		Assert.assertFalse(Files.exists(link.toPath(), LinkOption.NOFOLLOW_LINKS));
+		Assert.assertTrue(kept.isFile());
+	}
+
+	private static File write(File file, String content) throws IOException {
+		FileUtils.writeStringToFile(file, content, UTF8);
+		return file;
+	}
+}
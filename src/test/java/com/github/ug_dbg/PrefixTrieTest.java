@@ -0,0 +1,59 @@
+package com.github.ug_dbg;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.logging.Level;
+
+public class PrefixTrieTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final PrefixTrie trie = new PrefixTrie()
+		.add("npm", Level.FINE)
+		.add(new String[] {"npm WARN", " npm ERR "}, Level.WARNING)
+		.add("npm ERR", Level.SEVERE);
+
+	@Test
+	public void longestMatch() {
+		Assert.assertEquals(Level.SEVERE, this.trie.match("npm ERR! code 1"));
+		Assert.assertEquals(Level.WARNING, this.trie.match("npm WARN deprecated"));
+		Assert.assertEquals(Level.FINE, this.trie.match("npm notice"));
+		Assert.assertEquals(Level.FINE, this.trie.match("npm E"));
+		Assert.assertNull(this.trie.match("np"));
+		Assert.assertNull(this.trie.match("webpack compiled"));
+		Assert.assertNull(this.trie.match(""));
+	}
+
+	@Test
+	public void caseAndLeadingWhitespaces() {
+		Assert.assertEquals(Level.SEVERE, this.trie.match(" \t NPM err! code 1"));
+		Assert.assertNull(this.trie.match("x npm ERR!"));
+	}
+
+	@Test
+	public void asciiPath() {
+		Assert.assertTrue(this.trie.isAscii());
+		for (String line : new String[] {"npm ERR! code 1", "  Npm warn x", "npm notice", "np", "h\u00e9h\u00e9 npm", ""}) {
+			byte[] bytes = line.getBytes(UTF8);
+			Assert.assertEquals(line, this.trie.match(line), this.trie.match(bytes, bytes.length));
+		}
+
+		byte[] padded = "npm ERR! and some bytes after the line".getBytes(UTF8);
+		Assert.assertEquals(Level.FINE, this.trie.match(padded, 5));
+	}
+
+	@Test
+	public void nonAscii() {
+		PrefixTrie trie = new PrefixTrie().add("\u00c9CHEC", Level.SEVERE);
+		Assert.assertFalse(trie.isAscii());
+		Assert.assertEquals(Level.SEVERE, trie.match("\u00e9chec : build"));
+	}
+
+	@Test
+	public void blankPrefixes() {
+		PrefixTrie trie = new PrefixTrie().add((String) null, Level.SEVERE).add("  ", Level.SEVERE).add((String[]) null, Level.SEVERE);
+		Assert.assertNull(trie.match("anything"));
+		Assert.assertNull(trie.match(" "));
+	}
+}
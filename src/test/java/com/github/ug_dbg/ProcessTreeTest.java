@@ -0,0 +1,62 @@
+package com.github.ug_dbg;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class ProcessTreeTest {
+
+	@Test
+	public void destroy() throws Exception {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		ProcessTree process = start("sleep 60");
+		Assert.assertNull(process.reason());
+
+		process.destroy();
+
+		// The survivors are killed asynchronously
+		Assert.assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+		Assert.assertEquals("cancelled", process.reason());
+	}
+
+	@Test
+	public void destroyKillsDescendants() throws Exception {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		ProcessTree process = start("trap '' TERM; sleep 60 & wait");
+		long start = System.nanoTime();
+		while (process.toHandle().children().count() == 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10)) {
+			Thread.sleep(20);
+		}
+		ProcessHandle child = process.toHandle().children().findFirst().orElse(null);
+		Assert.assertNotNull(child);
+
+		process.destroy();
+
+		// The survivors are killed asynchronously
+		Assert.assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+		Assert.assertNotNull(child.onExit().get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void timeoutDoesNotBlockTheOtherChecks() throws Exception {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		// Ignores SIGTERM : killed after the grace period only
+		ProcessTree stubborn = start("trap '' TERM; sleep 60").watch(1, 0);
+		ProcessTree other = start("sleep 60").watch(1, 0);
+		long start = System.nanoTime();
+
+		Assert.assertTrue("The other process is checked during the grace period", other.waitFor(3500, TimeUnit.MILLISECONDS));
+		Assert.assertEquals("timed out after 1s", other.reason());
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 3500);
+
+		Assert.assertTrue("The stubborn process is killed after the grace period", stubborn.waitFor(10, TimeUnit.SECONDS));
+		Assert.assertEquals("timed out after 1s", stubborn.reason());
+	}
+
+	private static ProcessTree start(String script) throws IOException {
+		return new ProcessTree(new ProcessBuilder("sh", "-c", script).start());
+	}
+}
@@ -0,0 +1,81 @@
+package com.github.ug_dbg;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A maven logger that records the messages, as 'level:message', for the tests. All the levels are enabled.
+ */
+class RecordingLog implements Log {
+	final List<String> messages = new ArrayList<String>();
+
+	public boolean isDebugEnabled() {
+		return true;
+	}
+
+	public void debug(CharSequence content) {
+		this.record("debug", content);
+	}
+
+	public void debug(CharSequence content, Throwable error) {
+		this.record("debug", content);
+	}
+
+	public void debug(Throwable error) {
+		this.record("debug", String.valueOf(error));
+	}
+
+	public boolean isInfoEnabled() {
+		return true;
+	}
+
+	public void info(CharSequence content) {
+		this.record("info", content);
+	}
+
+	public void info(CharSequence content, Throwable error) {
+		this.record("info", content);
+	}
+
+	public void info(Throwable error) {
+		this.record("info", String.valueOf(error));
+	}
+
+	public boolean isWarnEnabled() {
+		return true;
+	}
+
+	public void warn(CharSequence content) {
+		this.record("warn", content);
+	}
+
+	public void warn(CharSequence content, Throwable error) {
+		this.record("warn", content);
+	}
+
+	public void warn(Throwable error) {
+		this.record("warn", String.valueOf(error));
+	}
+
+	public boolean isErrorEnabled() {
+		return true;
+	}
+
+	public void error(CharSequence content) {
+		this.record("error", content);
+	}
+
+	public void error(CharSequence content, Throwable error) {
+		this.record("error", content);
+	}
+
+	public void error(Throwable error) {
+		this.record("error", String.valueOf(error));
+	}
+
+	private synchronized void record(String level, CharSequence content) {
+		this.messages.add(level + ":" + content);
+	}
+}
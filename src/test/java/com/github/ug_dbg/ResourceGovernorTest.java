@@ -0,0 +1,103 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.exec.CommandLine;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ResourceGovernorTest {
+
+	private final RecordingLog log = new RecordingLog();
+
+	@Test
+	public void nodeMemoryDisabled() {
+		ResourceGovernor governor = new ResourceGovernor(0, false, 0, this.log);
+		Map<String, String> environment = Collections.singletonMap("KEY", "value");
+
+		Assert.assertSame(environment, governor.environment(environment));
+		Assert.assertNull(governor.environment(null));
+	}
+
+	@Test
+	public void nodeMemory() {
+		Assume.assumeTrue(System.getenv("NODE_OPTIONS") == null);
+		ResourceGovernor governor = new ResourceGovernor(0, true, 0, this.log);
+
+		Map<String, String> environment = governor.environment(null);
+		Assert.assertNotNull(environment);
+		Assert.assertTrue(environment.get("NODE_OPTIONS"), environment.get("NODE_OPTIONS").matches("--max-old-space-size=\\d+"));
+		Assert.assertTrue(maxOldSpace(environment) >= 512);
+
+		Map<String, String> other = new HashMap<String, String>();
+		other.put("KEY", "value");
+		Map<String, String> merged = governor.environment(other);
+		Assert.assertEquals("value", merged.get("KEY"));
+		Assert.assertTrue(merged.containsKey("NODE_OPTIONS"));
+		Assert.assertFalse("The configured environment is not modified", other.containsKey("NODE_OPTIONS"));
+	}
+
+	@Test
+	public void nodeOptionsAreMerged() {
+		ResourceGovernor governor = new ResourceGovernor(0, true, 0, this.log);
+		Map<String, String> environment = Collections.singletonMap("NODE_OPTIONS", " --enable-source-maps ");
+
+		String nodeOptions = governor.environment(environment).get("NODE_OPTIONS");
+		Assert.assertTrue(nodeOptions, nodeOptions.matches("--enable-source-maps --max-old-space-size=\\d+"));
+	}
+
+	@Test
+	public void maxOldSpaceSizeIsKept() {
+		ResourceGovernor governor = new ResourceGovernor(0, true, 0, this.log);
+		Map<String, String> environment = Collections.singletonMap("NODE_OPTIONS", "--max-old-space-size=8192");
+
+		Assert.assertSame(environment, governor.environment(environment));
+	}
+
+	@Test
+	public void nice() {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		File nice = Executables.resolve("nice", new File("."), null);
+		Assume.assumeNotNull(nice);
+		CommandLine cmdLine = new CommandLine("npm").addArgument("run").addArgument("build");
+
+		CommandLine niced = new ResourceGovernor(0, false, 5, this.log).commandLine(cmdLine, new File("."));
+
+		Assert.assertEquals(nice.getAbsolutePath(), niced.getExecutable());
+		Assert.assertEquals(Arrays.asList("-n", "5", "npm", "run", "build"), Arrays.asList(niced.getArguments()));
+	}
+
+	@Test
+	public void notNiced() {
+		CommandLine cmdLine = new CommandLine("npm").addArgument("run");
+
+		Assert.assertSame(cmdLine, new ResourceGovernor(0, false, 0, this.log).commandLine(cmdLine, new File(".")));
+	}
+
+	@Test
+	public void slotCountIsSetOnce() throws Exception {
+		new ResourceGovernor(7, false, 0, this.log);
+		new ResourceGovernor(7, false, 0, this.log);
+		Assert.assertTrue(this.log.messages.toString(), this.log.messages.isEmpty());
+
+		new ResourceGovernor(9, false, 0, this.log);
+		new ResourceGovernor(9, false, 0, this.log);
+		Assert.assertEquals(Arrays.asList(
+			"warn:The process slot count is already [7] for the whole build : ignoring 'npm.maxProcesses' [9]"
+		), this.log.messages);
+
+		ResourceGovernor governor = new ResourceGovernor(0, false, 0, this.log);
+		governor.acquire("npm run build");
+		governor.release();
+	}
+
+	private static long maxOldSpace(Map<String, String> environment) {
+		String nodeOptions = environment.get("NODE_OPTIONS");
+		return Long.parseLong(nodeOptions.substring(nodeOptions.indexOf('=') + 1));
+	}
+}
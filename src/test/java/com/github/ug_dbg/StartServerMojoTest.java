@@ -0,0 +1,74 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.time.Instant;
+
+public class StartServerMojoTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void missing() {
+		Assert.assertNull(StartServerMojo.readPidFile(new File(this.folder.getRoot(), "missing.pid")));
+	}
+
+	@Test
+	public void invalid() throws Exception {
+		Assert.assertNull(StartServerMojo.readPidFile(this.pidFile("")));
+		Assert.assertNull(StartServerMojo.readPidFile(this.pidFile("not a pid\n")));
+		Assert.assertNull(StartServerMojo.readPidFile(this.pidFile(ProcessHandle.current().pid() + "\nnot a time\n")));
+	}
+
+	@Test
+	public void running() throws Exception {
+		ProcessHandle current = ProcessHandle.current();
+		Assert.assertEquals(current, StartServerMojo.readPidFile(this.pidFile(current.pid() + "\n")));
+
+		Instant start = current.info().startInstant().orElse(null);
+		if (start != null) {
+			Assert.assertEquals(current, StartServerMojo.readPidFile(this.pidFile(current.pid() + "\n" + start.toEpochMilli() + "\n")));
+		}
+	}
+
+	@Test
+	public void reusedPid() throws Exception {
+		ProcessHandle current = ProcessHandle.current();
+		Instant start = current.info().startInstant().orElse(null);
+		if (start == null) {
+			// No process start time on this platform : a reused PID cannot be detected
+			return;
+		}
+		Assert.assertNull(StartServerMojo.readPidFile(this.pidFile(current.pid() + "\n" + (start.toEpochMilli() - 60000) + "\n")));
+	}
+
+	@Test
+	public void exited() throws Exception {
+		Process process = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(), "-version").redirectErrorStream(true).start();
+		process.getInputStream().close();
+		process.waitFor();
+		Assert.assertNull(StartServerMojo.readPidFile(this.pidFile(process.pid() + "\n")));
+	}
+
+	@Test
+	public void pidFile() {
+		File buildDirectory = new File("target");
+		Assert.assertEquals(new File(buildDirectory, "npm-server.pid"), StartServerMojo.pidFile(null, buildDirectory, "server"));
+		Assert.assertEquals(new File("server.pid"), StartServerMojo.pidFile(new File("server.pid"), buildDirectory, "server"));
+	}
+
+	private File pidFile(String content) throws IOException {
+		File pidFile = File.createTempFile("npm-", ".pid", this.folder.getRoot());
+		FileUtils.writeStringToFile(pidFile, content, UTF8);
+		return pidFile;
+	}
+}
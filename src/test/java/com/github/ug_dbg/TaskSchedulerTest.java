@@ -0,0 +1,138 @@
+package com.github.ug_dbg;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TaskSchedulerTest {
+
+	private final RecordingLog log = new RecordingLog();
+	private final List<String> runs = Collections.synchronizedList(new ArrayList<String>());
+
+	@Test
+	public void dependencyOrder() throws Exception {
+		TaskScheduler scheduler = new TaskScheduler(4, this.log);
+		scheduler.add("test", this.task("test"), Arrays.asList("build", "lint"));
+		scheduler.add("build", this.task("build"), Arrays.asList("install"));
+		scheduler.add("lint", this.task("lint"), Arrays.asList("install"));
+		scheduler.add("install", this.task("install"), Collections.<String>emptyList());
+		scheduler.execute();
+
+		Assert.assertEquals(4, this.runs.size());
+		Assert.assertEquals("install", this.runs.get(0));
+		Assert.assertEquals("test", this.runs.get(3));
+	}
+
+	@Test
+	public void declarationOrder() throws Exception {
+		TaskScheduler scheduler = new TaskScheduler(1, this.log);
+		for (String name : new String[] {"c", "a", "b"}) {
+			scheduler.add(name, this.task(name), Collections.<String>emptyList());
+		}
+		scheduler.execute();
+
+		Assert.assertEquals(Arrays.asList("c", "a", "b"), this.runs);
+	}
+
+	@Test
+	public void failure() throws Exception {
+		TaskScheduler scheduler = new TaskScheduler(1, this.log);
+		scheduler.add("install", this.task("install"), Collections.<String>emptyList());
+		scheduler.add("build", this.failure("build", new MojoFailureException("build failed")), Arrays.asList("install"));
+		scheduler.add("test", this.task("test"), Arrays.asList("build"));
+
+		try {
+			scheduler.execute();
+			Assert.fail("The build failure must be propagated");
+		} catch (MojoFailureException e) {
+			Assert.assertEquals("build failed", e.getCause().getMessage());
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("[build] : build failed"));
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("Not run or cancelled : [test]"));
+		}
+		Assert.assertEquals(Arrays.asList("install", "build"), this.runs);
+	}
+
+	@Test
+	public void executionErrorFirst() throws Exception {
+		TaskScheduler scheduler = new TaskScheduler(1, this.log);
+		scheduler.setContinueOnFailure(true);
+		scheduler.add("a", this.failure("a", new MojoFailureException("a failed")), Collections.<String>emptyList());
+		scheduler.add("b", this.failure("b", new MojoExecutionException("b error")), Collections.<String>emptyList());
+		scheduler.add("c", this.task("c"), Collections.<String>emptyList());
+
+		try {
+			scheduler.execute();
+			Assert.fail("The failures must be propagated");
+		} catch (MojoExecutionException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("2 task(s) failed out of 3"));
+		}
+		Assert.assertEquals(Arrays.asList("a", "b", "c"), this.runs);
+	}
+
+	@Test
+	public void invalidDependencies() {
+		TaskScheduler unknown = new TaskScheduler(1, this.log);
+		unknown.add("a", this.task("a"), Arrays.asList("missing"));
+		assertInvalid(unknown);
+
+		TaskScheduler cycle = new TaskScheduler(1, this.log);
+		cycle.add("a", this.task("a"), Arrays.asList("b"));
+		cycle.add("b", this.task("b"), Arrays.asList("a"));
+		assertInvalid(cycle);
+
+		Assert.assertTrue(this.runs.isEmpty());
+	}
+
+	@Test
+	public void processDuration() throws Exception {
+		TaskScheduler scheduler = new TaskScheduler(2, this.log);
+		scheduler.add("process", new TaskScheduler.Task() {
+			public void run() {
+				TaskScheduler.addProcessTime(10);
+				TaskScheduler.addProcessTime(5);
+			}
+		}, Collections.<String>emptyList());
+		scheduler.add("up-to-date", this.task("up-to-date"), Collections.<String>emptyList());
+		scheduler.execute();
+
+		Assert.assertEquals(Long.valueOf(15), scheduler.processDuration("process"));
+		Assert.assertNull(scheduler.processDuration("up-to-date"));
+	}
+
+	private static void assertInvalid(TaskScheduler scheduler) {
+		try {
+			scheduler.execute();
+			Assert.fail("Invalid dependencies must be rejected");
+		} catch (MojoExecutionException e) {
+			// Expected
+		} catch (MojoFailureException e) {
+			Assert.fail("Invalid dependencies are not a task failure");
+		}
+	}
+
+	private TaskScheduler.Task task(final String name) {
+		return new TaskScheduler.Task() {
+			public void run() {
+				TaskSchedulerTest.this.runs.add(name);
+			}
+		};
+	}
+
+	private TaskScheduler.Task failure(final String name, final Exception failure) {
+		return new TaskScheduler.Task() {
+			public void run() throws MojoExecutionException, MojoFailureException {
+				TaskSchedulerTest.this.runs.add(name);
+				if (failure instanceof MojoExecutionException) {
+					throw (MojoExecutionException) failure;
+				}
+				throw (MojoFailureException) failure;
+			}
+		};
+	}
+}
@@ -0,0 +1,91 @@
+package com.github.ug_dbg;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TrashTest {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final RecordingLog log = new RecordingLog();
+
+	@Test
+	public void moveToTrash() throws Exception {
+		File nodeModules = this.tree("node_modules");
+
+		File tombstone = new Trash(this.log).moveToTrash(nodeModules);
+
+		Assert.assertFalse(nodeModules.exists());
+		Assert.assertEquals(this.folder.getRoot(), tombstone.getParentFile());
+		Assert.assertTrue(tombstone.getName(), tombstone.getName().startsWith(Trash.TOMBSTONE_PREFIX + "node_modules-"));
+		Assert.assertTrue(new File(tombstone, "pkg/index.js").isFile());
+		Assert.assertEquals(Arrays.asList(tombstone), Trash.tombstones(this.folder.getRoot()));
+	}
+
+	@Test
+	public void tombstones() throws Exception {
+		this.tree("node_modules");
+		FileUtils.writeStringToFile(new File(this.folder.getRoot(), Trash.TOMBSTONE_PREFIX + "file"), "not a directory", UTF8);
+
+		Assert.assertTrue(Trash.tombstones(this.folder.getRoot()).isEmpty());
+		Assert.assertTrue(Trash.tombstones(new File(this.folder.getRoot(), "missing")).isEmpty());
+	}
+
+	@Test
+	public void previousRunTombstonesInThread() throws Exception {
+		Trash trash = new Trash(this.log);
+		// A tombstone left by a previous (interrupted) run, then the tombstone of this run
+		File previous = trash.moveToTrash(this.tree("node_modules"));
+		File current = trash.moveToTrash(this.tree("node_modules"));
+
+		List<File> tombstones = Trash.tombstones(this.folder.getRoot());
+		Assert.assertEquals(2, tombstones.size());
+		Assert.assertTrue(tombstones.contains(previous));
+		Assert.assertTrue(tombstones.contains(current));
+
+		trash.deleteInThread(tombstones, new ParallelDelete(2));
+		awaitDeleted(previous, current);
+		Assert.assertTrue(Trash.tombstones(this.folder.getRoot()).isEmpty());
+	}
+
+	@Test
+	public void previousRunTombstonesInProcess() throws Exception {
+		Assume.assumeFalse(AbstractMojo.isWindows());
+		Trash trash = new Trash(this.log);
+		File previous = trash.moveToTrash(this.tree("dist"));
+
+		trash.deleteInProcess(Trash.tombstones(this.folder.getRoot()));
+		awaitDeleted(previous);
+	}
+
+	private File tree(String name) throws IOException {
+		File directory = new File(this.folder.getRoot(), name);
+		FileUtils.writeStringToFile(new File(directory, "pkg/index.js"), "module.exports = {};", UTF8);
+		FileUtils.writeStringToFile(new File(directory, "pkg/lib/util.js"), "module.exports = {};", UTF8);
+		return directory;
+	}
+
+	/** The tombstones are deleted in background. */
+	private static void awaitDeleted(File... tombstones) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		for (File tombstone : tombstones) {
+			while (tombstone.exists() && System.nanoTime() < deadline) {
+				Thread.sleep(20);
+			}
+			Assert.assertFalse("Tombstone [" + tombstone + "] not deleted", tombstone.exists());
+		}
+	}
+}